@@ -0,0 +1,356 @@
+package io.blushine.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton for finding all occurrences of many patterns in one linear pass over the
+ * text. The automaton is a full DFA stored in a single int array, one row per state and one column
+ * per distinct pattern character. Characters that don't occur in any pattern always lead back to
+ * the root state. Create one through {@link Strings#buildMatcher(boolean, String...)}.
+ * <p>
+ * The automaton is immutable and can be shared between threads.
+ */
+public class AhoCorasick {
+/** Number of characters that are looked up directly instead of with a binary search */
+private static final int DIRECT_LOOKUP_SIZE = 128;
+private final String[] mPatterns;
+private final boolean mIgnoreCase;
+/** All distinct (folded) characters in the patterns, sorted */
+private final char[] mAlphabet;
+/** Column + 1 for ASCII characters, 0 if not in the alphabet */
+private final int[] mDirectColumns = new int[DIRECT_LOOKUP_SIZE];
+/** Transition table, state * alphabet size + column */
+private final int[] mTransitions;
+/** First pattern that ends in the state, -1 if none */
+private final int[] mOutputs;
+/** Next state in the suffix chain that has an output, -1 if none */
+private final int[] mOutputLinks;
+/** Next pattern that is identical to this pattern, -1 if none */
+private final int[] mSamePatterns;
+
+/**
+ * Build the automaton
+ * @param ignoreCase true if the matching should be case insensitive
+ * @param patterns all patterns to search for, empty patterns are never matched
+ */
+AhoCorasick(boolean ignoreCase, String[] patterns) {
+	mPatterns = patterns.clone();
+	mIgnoreCase = ignoreCase;
+	mAlphabet = createAlphabet();
+
+	int width = mAlphabet.length;
+	int maxStates = 1;
+	for (String pattern : mPatterns) {
+		maxStates += pattern.length();
+	}
+
+	// Build trie, -1 as missing transition
+	int[] transitions = new int[maxStates * width];
+	Arrays.fill(transitions, -1);
+	int[] outputs = new int[maxStates];
+	Arrays.fill(outputs, -1);
+	mSamePatterns = new int[mPatterns.length];
+	Arrays.fill(mSamePatterns, -1);
+	int cStates = 1;
+
+	for (int patternIndex = 0; patternIndex < mPatterns.length; ++patternIndex) {
+		String pattern = mPatterns[patternIndex];
+		if (pattern.isEmpty()) {
+			continue;
+		}
+
+		int state = 0;
+		for (int i = 0; i < pattern.length(); ++i) {
+			int cell = state * width + getColumn(pattern.charAt(i));
+			if (transitions[cell] == -1) {
+				transitions[cell] = cStates++;
+			}
+			state = transitions[cell];
+		}
+
+		// Chain identical patterns
+		if (outputs[state] != -1) {
+			int samePattern = outputs[state];
+			while (mSamePatterns[samePattern] != -1) {
+				samePattern = mSamePatterns[samePattern];
+			}
+			mSamePatterns[samePattern] = patternIndex;
+		} else {
+			outputs[state] = patternIndex;
+		}
+	}
+
+	mTransitions = Arrays.copyOf(transitions, cStates * width);
+	mOutputs = Arrays.copyOf(outputs, cStates);
+	mOutputLinks = new int[cStates];
+	Arrays.fill(mOutputLinks, -1);
+	createFailureTransitions(cStates, width);
+}
+
+/**
+ * Collect all distinct characters of the patterns
+ * @return sorted array of all distinct (folded) characters
+ */
+private char[] createAlphabet() {
+	StringBuilder allChars = new StringBuilder();
+	for (String pattern : mPatterns) {
+		for (int i = 0; i < pattern.length(); ++i) {
+			allChars.append(fold(pattern.charAt(i)));
+		}
+	}
+
+	char[] chars = allChars.toString().toCharArray();
+	Arrays.sort(chars);
+	int cUnique = 0;
+	for (int i = 0; i < chars.length; ++i) {
+		if (i == 0 || chars[i] != chars[i - 1]) {
+			chars[cUnique++] = chars[i];
+		}
+	}
+	char[] alphabet = Arrays.copyOf(chars, cUnique);
+
+	for (int i = 0; i < alphabet.length && alphabet[i] < DIRECT_LOOKUP_SIZE; ++i) {
+		mDirectColumns[alphabet[i]] = i + 1;
+	}
+
+	return alphabet;
+}
+
+/**
+ * Replace all missing transitions with the transition of the failure state (breadth first) so
+ * that the table becomes a full DFA. Also links each state to the next output state.
+ * @param cStates number of states
+ * @param width alphabet size
+ */
+private void createFailureTransitions(int cStates, int width) {
+	int[] failures = new int[cStates];
+	int[] queue = new int[cStates];
+	int queueHead = 0;
+	int queueTail = 0;
+
+	// Root
+	for (int column = 0; column < width; ++column) {
+		int child = mTransitions[column];
+		if (child == -1) {
+			mTransitions[column] = 0;
+		} else {
+			failures[child] = 0;
+			queue[queueTail++] = child;
+		}
+	}
+
+	while (queueHead < queueTail) {
+		int state = queue[queueHead++];
+		int row = state * width;
+		int failureRow = failures[state] * width;
+
+		for (int column = 0; column < width; ++column) {
+			int child = mTransitions[row + column];
+			if (child == -1) {
+				mTransitions[row + column] = mTransitions[failureRow + column];
+			} else {
+				int failure = mTransitions[failureRow + column];
+				failures[child] = failure;
+				mOutputLinks[child] = mOutputs[failure] != -1 ? failure : mOutputLinks[failure];
+				queue[queueTail++] = child;
+			}
+		}
+	}
+}
+
+/**
+ * Fold the character if the automaton is case insensitive
+ * @param character the character to fold
+ * @return folded character
+ */
+private char fold(char character) {
+	if (mIgnoreCase) {
+		return Character.toLowerCase(Character.toUpperCase(character));
+	} else {
+		return character;
+	}
+}
+
+/**
+ * Get the column of a character
+ * @param character the character (not folded)
+ * @return column in the transition table, -1 if the character isn't in any pattern
+ */
+private int getColumn(char character) {
+	char folded = fold(character);
+	if (folded < DIRECT_LOOKUP_SIZE) {
+		return mDirectColumns[folded] - 1;
+	} else {
+		int index = Arrays.binarySearch(mAlphabet, folded);
+		return index >= 0 ? index : -1;
+	}
+}
+
+/**
+ * Get the next state
+ * @param state current state
+ * @param character next character in the text
+ * @return next state
+ */
+private int nextState(int state, char character) {
+	int column = getColumn(character);
+	if (column == -1) {
+		return 0;
+	} else {
+		return mTransitions[state * mAlphabet.length + column];
+	}
+}
+
+/**
+ * Find all pattern occurrences in the text, including overlapping ones
+ * @param text the text to search in
+ * @return all matches ordered by end position
+ */
+public List<Match> findAll(CharSequence text) {
+	final List<Match> matches = new ArrayList<>();
+	findAll(text, new MatchListener() {
+		@Override
+		public boolean onMatch(int patternIndex, int start, int end) {
+			matches.add(new Match(patternIndex, start, end));
+			return true;
+		}
+	});
+	return matches;
+}
+
+/**
+ * Find all pattern occurrences in the text without allocating anything
+ * @param text the text to search in
+ * @param listener called for each match ordered by end position
+ * @return true if the whole text was searched, false if the listener stopped the search
+ */
+public boolean findAll(CharSequence text, MatchListener listener) {
+	int state = 0;
+	for (int i = 0; i < text.length(); ++i) {
+		state = nextState(state, text.charAt(i));
+
+		int outputState = mOutputs[state] != -1 ? state : mOutputLinks[state];
+		while (outputState != -1) {
+			int patternIndex = mOutputs[outputState];
+			int start = i + 1 - mPatterns[patternIndex].length();
+			while (patternIndex != -1) {
+				if (!listener.onMatch(patternIndex, start, i + 1)) {
+					return false;
+				}
+				patternIndex = mSamePatterns[patternIndex];
+			}
+			outputState = mOutputLinks[outputState];
+		}
+	}
+	return true;
+}
+
+/**
+ * Checks if the text contains any of the patterns
+ * @param text the text to search in
+ * @return true if at least one pattern was found
+ */
+public boolean containsAny(CharSequence text) {
+	int state = 0;
+	for (int i = 0; i < text.length(); ++i) {
+		state = nextState(state, text.charAt(i));
+		if (mOutputs[state] != -1 || mOutputLinks[state] != -1) {
+			return true;
+		}
+	}
+	return false;
+}
+
+/**
+ * @return true if the matching is case insensitive
+ */
+public boolean isIgnoreCase() {
+	return mIgnoreCase;
+}
+
+/**
+ * @return number of patterns
+ */
+public int getPatternCount() {
+	return mPatterns.length;
+}
+
+/**
+ * @param patternIndex index of the pattern
+ * @return the pattern with the specified index
+ */
+public String getPattern(int patternIndex) {
+	return mPatterns[patternIndex];
+}
+
+/**
+ * @return number of states in the automaton
+ */
+public int getStateCount() {
+	return mOutputs.length;
+}
+
+/**
+ * Listens to matches found by {@link #findAll(CharSequence, MatchListener)}
+ */
+public interface MatchListener {
+	/**
+	 * Called for each pattern occurrence
+	 * @param patternIndex index of the pattern that was found
+	 * @param start index of the first character of the occurrence in the text
+	 * @param end index after the last character of the occurrence in the text
+	 * @return true to continue the search, false to stop it
+	 */
+	boolean onMatch(int patternIndex, int start, int end);
+}
+
+/**
+ * A pattern occurrence in the text
+ */
+public class Match {
+	private final int mPatternIndex;
+	private final int mStart;
+	private final int mEnd;
+
+	private Match(int patternIndex, int start, int end) {
+		mPatternIndex = patternIndex;
+		mStart = start;
+		mEnd = end;
+	}
+
+	/**
+	 * @return index of the pattern that was found
+	 */
+	public int getPatternIndex() {
+		return mPatternIndex;
+	}
+
+	/**
+	 * @return the pattern that was found
+	 */
+	public String getPattern() {
+		return mPatterns[mPatternIndex];
+	}
+
+	/**
+	 * @return index of the first character of the occurrence in the text
+	 */
+	public int getStart() {
+		return mStart;
+	}
+
+	/**
+	 * @return index after the last character of the occurrence in the text
+	 */
+	public int getEnd() {
+		return mEnd;
+	}
+
+	@Override
+	public String toString() {
+		return getPattern() + " [" + mStart + ", " + mEnd + ")";
+	}
+}
+}
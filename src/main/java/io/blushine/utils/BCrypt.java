@@ -14,7 +14,6 @@ package io.blushine.utils;
 // ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
 // OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
 
-import java.io.UnsupportedEncodingException;
 import java.security.SecureRandom;
 
 /**
@@ -307,11 +306,7 @@ public static String hashpw(String password, String salt) {
 	rounds = Integer.parseInt(salt.substring(off, off + 2));
 	
 	real_salt = salt.substring(off + 3, off + 25);
-	try {
-		passwordb = (password + (minor >= 'a' ? "\000" : "")).getBytes("UTF-8");
-	} catch (UnsupportedEncodingException uee) {
-		throw new AssertionError("UTF-8 is not supported");
-	}
+	passwordb = Buffers.encodeUtf8(password + (minor >= 'a' ? "\000" : ""));
 	
 	saltb = decode_base64(real_salt, BCRYPT_SALT_LEN);
 	
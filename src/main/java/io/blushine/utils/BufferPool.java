@@ -0,0 +1,365 @@
+package io.blushine.utils;
+
+import io.blushine.utils.concurrent.MpmcRingBuffer;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of heap or direct byte buffers with power-of-two size classes. Each thread has a small cache
+ * per size class in front of a shared lock-free buffer per size class. Requests larger than the
+ * largest size class are allocated directly and never pooled.
+ * <p>
+ * In debug mode the pool remembers where every outstanding buffer was acquired and reports buffers
+ * that were garbage collected without being released to the {@link LeakListener}. Debug mode is
+ * slow, only use it during development.
+ * @see Buffers#getHeapPool()
+ * @see Buffers#getDirectPool()
+ */
+public class BufferPool {
+/** Smallest size class */
+private static final int MIN_SIZE_DEFAULT = 256;
+/** Largest size class */
+private static final int MAX_SIZE_DEFAULT = 4 * 1024 * 1024;
+/** Approximate number of bytes to keep in the shared buffer per size class */
+private static final int SHARED_BYTES_PER_CLASS = 4 * 1024 * 1024;
+/** Approximate number of bytes to keep per thread and size class */
+private static final int THREAD_BYTES_PER_CLASS = 256 * 1024;
+private final boolean mDirect;
+private final int mMinSizeShift;
+private final int mMaxSize;
+private final MpmcRingBuffer<ByteBuffer>[] mShared;
+private final int[] mThreadCapacities;
+private final ThreadLocal<ArrayDeque<ByteBuffer>[]> mThreadCaches = new ThreadLocal<ArrayDeque<ByteBuffer>[]>() {
+	@Override
+	protected ArrayDeque<ByteBuffer>[] initialValue() {
+		@SuppressWarnings("unchecked")
+		ArrayDeque<ByteBuffer>[] caches = (ArrayDeque<ByteBuffer>[]) new ArrayDeque<?>[mShared.length];
+		for (int i = 0; i < caches.length; ++i) {
+			caches[i] = new ArrayDeque<>(mThreadCapacities[i]);
+		}
+		return caches;
+	}
+};
+private final LongAdder mcHits = new LongAdder();
+private final LongAdder mcMisses = new LongAdder();
+private final LongAdder mcOutstanding = new LongAdder();
+private volatile boolean mDebug = false;
+private volatile LeakListener mLeakListener = new LeakListener() {
+	@Override
+	public void onLeak(int capacity, Throwable acquiredAt) {
+		acquiredAt.printStackTrace();
+	}
+};
+/** Outstanding buffers in debug mode by identity hash code */
+private final Map<Integer, List<LeakTracker>> mLeakTrackers = new HashMap<>();
+private final ReferenceQueue<ByteBuffer> mLeakQueue = new ReferenceQueue<>();
+
+/**
+ * Create a pool with size classes from 256 B to 4 MB
+ * @param direct true to pool direct buffers, false for heap buffers
+ */
+public BufferPool(boolean direct) {
+	this(direct, MIN_SIZE_DEFAULT, MAX_SIZE_DEFAULT);
+}
+
+/**
+ * Create a pool
+ * @param direct true to pool direct buffers, false for heap buffers
+ * @param minSize smallest size class, rounded up to a power of two
+ * @param maxSize largest size class, rounded up to a power of two
+ */
+public BufferPool(boolean direct, int minSize, int maxSize) {
+	if (minSize <= 0 || maxSize < minSize) {
+		throw new IllegalArgumentException("Invalid size classes: " + minSize + " - " + maxSize);
+	}
+
+	mDirect = direct;
+	mMinSizeShift = Integer.numberOfTrailingZeros(Maths.nextPowerOfTwo(minSize));
+	mMaxSize = Maths.nextPowerOfTwo(maxSize);
+	int cSizeClasses = Integer.numberOfTrailingZeros(mMaxSize) - mMinSizeShift + 1;
+
+	@SuppressWarnings("unchecked")
+	MpmcRingBuffer<ByteBuffer>[] shared = (MpmcRingBuffer<ByteBuffer>[]) new MpmcRingBuffer<?>[cSizeClasses];
+	mShared = shared;
+	mThreadCapacities = new int[cSizeClasses];
+	for (int i = 0; i < cSizeClasses; ++i) {
+		int size = 1 << (mMinSizeShift + i);
+		mShared[i] = new MpmcRingBuffer<>(Math.max(2, Math.min(SHARED_BYTES_PER_CLASS / size, 256)));
+		mThreadCapacities[i] = Math.max(1, Math.min(THREAD_BYTES_PER_CLASS / size, 8));
+	}
+}
+
+/**
+ * Get a cleared buffer from the pool. The capacity is the size class, the limit the requested
+ * size.
+ * @param size minimum number of bytes in the buffer
+ * @return buffer with position 0 and limit size
+ */
+public ByteBuffer acquire(int size) {
+	ByteBuffer buffer = null;
+	int sizeClass = getSizeClass(size);
+
+	if (sizeClass != -1) {
+		ArrayDeque<ByteBuffer> threadCache = mThreadCaches.get()[sizeClass];
+		buffer = threadCache.pollLast();
+		if (buffer == null) {
+			buffer = mShared[sizeClass].poll();
+		}
+	}
+
+	if (buffer != null) {
+		mcHits.increment();
+		buffer.clear();
+	} else {
+		mcMisses.increment();
+		int capacity = sizeClass != -1 ? 1 << (mMinSizeShift + sizeClass) : size;
+		buffer = mDirect ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+	buffer.limit(size);
+
+	mcOutstanding.increment();
+	if (mDebug) {
+		track(buffer);
+	}
+	return buffer;
+}
+
+/**
+ * Return a buffer to the pool. The buffer must not be used after this. Buffers that don't belong
+ * to any size class are left to the garbage collector. In debug mode releasing a buffer that
+ * wasn't acquired from the pool, or releasing it twice, throws; otherwise only a double release
+ * that is still in this thread's cache is detected, so enable debug mode before acquiring the
+ * buffers to check.
+ * @param buffer the buffer to return
+ * @throws IllegalStateException if the buffer isn't outstanding
+ */
+public void release(ByteBuffer buffer) {
+	if (buffer == null) {
+		return;
+	}
+
+	if (mDebug && !untrack(buffer)) {
+		throw new IllegalStateException("Buffer was not acquired from this pool or has already been released");
+	}
+
+	int capacity = buffer.capacity();
+	if (buffer.isDirect() != mDirect || buffer.isReadOnly()) {
+		return;
+	}
+	if (capacity > mMaxSize) {
+		mcOutstanding.decrement();
+		return;
+	}
+	if (!Maths.isPowerOfTwo(capacity)) {
+		return;
+	}
+	int sizeClass = Integer.numberOfTrailingZeros(capacity) - mMinSizeShift;
+	if (sizeClass < 0) {
+		return;
+	}
+
+	ArrayDeque<ByteBuffer> threadCache = mThreadCaches.get()[sizeClass];
+	for (ByteBuffer cached : threadCache) {
+		if (cached == buffer) {
+			throw new IllegalStateException("Buffer has already been released");
+		}
+	}
+	mcOutstanding.decrement();
+	if (threadCache.size() < mThreadCapacities[sizeClass]) {
+		threadCache.addLast(buffer);
+	} else {
+		mShared[sizeClass].offer(buffer);
+	}
+}
+
+/**
+ * @param size requested size
+ * @return size class index, -1 if too large for the pool
+ */
+private int getSizeClass(int size) {
+	if (size > mMaxSize) {
+		return -1;
+	}
+	int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+	return Math.max(shift - mMinSizeShift, 0);
+}
+
+/**
+ * @return true if the pool has direct buffers, false for heap buffers
+ */
+public boolean isDirect() {
+	return mDirect;
+}
+
+/**
+ * @return number of times a buffer was reused
+ */
+public long getHitCount() {
+	return mcHits.sum();
+}
+
+/**
+ * @return number of times a new buffer had to be allocated
+ */
+public long getMissCount() {
+	return mcMisses.sum();
+}
+
+/**
+ * @return number of buffers that have been acquired but not released. Outside debug mode a
+ * foreign buffer with the capacity of a size class can't be told apart from a pooled one, so only
+ * debug mode guarantees an exact count.
+ */
+public long getOutstandingCount() {
+	return mcOutstanding.sum();
+}
+
+/**
+ * Enable or disable leak detection and release checks. Only buffers acquired while enabled are
+ * tracked, and releasing an untracked buffer while enabled throws.
+ * @param debug true to enable leak detection
+ */
+public void setDebug(boolean debug) {
+	mDebug = debug;
+}
+
+/**
+ * @return true if leak detection is enabled
+ */
+public boolean isDebug() {
+	return mDebug;
+}
+
+/**
+ * Set the listener for leaked buffers in debug mode. The default listener prints the stack trace
+ * where the buffer was acquired.
+ * @param leakListener listener for leaked buffers
+ */
+public void setLeakListener(LeakListener leakListener) {
+	if (leakListener == null) {
+		throw new IllegalArgumentException("leakListener is null");
+	}
+	mLeakListener = leakListener;
+}
+
+/**
+ * Report garbage collected buffers that were never released
+ */
+public void reportLeaks() {
+	Reference<? extends ByteBuffer> reference;
+	while ((reference = mLeakQueue.poll()) != null) {
+		LeakTracker leakTracker = (LeakTracker) reference;
+		boolean leaked;
+		synchronized (mLeakTrackers) {
+			leaked = removeTracker(leakTracker.mIdentityHash, leakTracker);
+		}
+		if (leaked) {
+			mLeakListener.onLeak(leakTracker.mCapacity, leakTracker.mAcquiredAt);
+		}
+	}
+}
+
+/**
+ * Track an acquired buffer
+ * @param buffer the acquired buffer
+ */
+private void track(ByteBuffer buffer) {
+	reportLeaks();
+	LeakTracker leakTracker = new LeakTracker(buffer, mLeakQueue);
+	synchronized (mLeakTrackers) {
+		List<LeakTracker> leakTrackers = mLeakTrackers.get(leakTracker.mIdentityHash);
+		if (leakTrackers == null) {
+			leakTrackers = new ArrayList<>(1);
+			mLeakTrackers.put(leakTracker.mIdentityHash, leakTrackers);
+		}
+		leakTrackers.add(leakTracker);
+	}
+}
+
+/**
+ * Stop tracking a released buffer
+ * @param buffer the released buffer
+ * @return true if the buffer was tracked, false if it wasn't acquired in debug mode or has already
+ * been released
+ */
+private boolean untrack(ByteBuffer buffer) {
+	int identityHash = System.identityHashCode(buffer);
+	synchronized (mLeakTrackers) {
+		List<LeakTracker> leakTrackers = mLeakTrackers.get(identityHash);
+		if (leakTrackers != null) {
+			for (LeakTracker leakTracker : leakTrackers) {
+				if (leakTracker.get() == buffer) {
+					leakTracker.clear();
+					removeTracker(identityHash, leakTracker);
+					return true;
+				}
+			}
+		}
+	}
+	return false;
+}
+
+/**
+ * Remove a tracker, must be called while holding the lock of {@link #mLeakTrackers}
+ * @param identityHash identity hash code of the tracked buffer
+ * @param leakTracker the tracker to remove
+ * @return true if the tracker was removed
+ */
+private boolean removeTracker(int identityHash, LeakTracker leakTracker) {
+	List<LeakTracker> leakTrackers = mLeakTrackers.get(identityHash);
+	if (leakTrackers == null) {
+		return false;
+	}
+
+	boolean removed = false;
+	Iterator<LeakTracker> iterator = leakTrackers.iterator();
+	while (iterator.hasNext()) {
+		if (iterator.next() == leakTracker) {
+			iterator.remove();
+			removed = true;
+			break;
+		}
+	}
+	if (leakTrackers.isEmpty()) {
+		mLeakTrackers.remove(identityHash);
+	}
+	return removed;
+}
+
+/**
+ * Listens to leaked buffers in debug mode
+ */
+public interface LeakListener {
+	/**
+	 * Called when a buffer was garbage collected without being released
+	 * @param capacity capacity of the leaked buffer
+	 * @param acquiredAt stack trace where the buffer was acquired
+	 */
+	void onLeak(int capacity, Throwable acquiredAt);
+}
+
+/**
+ * Remembers where a buffer was acquired
+ */
+private static class LeakTracker extends WeakReference<ByteBuffer> {
+	private final int mIdentityHash;
+	private final int mCapacity;
+	private final Throwable mAcquiredAt = new Throwable("Buffer acquired here was never released");
+
+	private LeakTracker(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue) {
+		super(buffer, queue);
+		mIdentityHash = System.identityHashCode(buffer);
+		mCapacity = buffer.capacity();
+	}
+}
+}
@@ -1,8 +1,31 @@
 package io.blushine.utils;
 
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 /**
  * Buffer utilities
@@ -12,66 +35,1076 @@ import java.util.ArrayList;
 public class Buffers {
 /** Default buffer size */
 private static final int BUFFER_SIZE_DEFAULT = 512;
+/** Largest array size that the VM can allocate */
+private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+/** Buffer size when copying between streams and channels */
+private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+/** Maximum bytes per zero-copy transfer call, so that progress can be reported */
+private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+/** Chunk size for parallel asynchronous file reads */
+private static final int ASYNC_CHUNK_SIZE = 1024 * 1024;
+/** Reused UTF-8 encoder, replaces malformed input like {@link String#getBytes} */
+private static final ThreadLocal<CharsetEncoder> UTF8_ENCODER = new ThreadLocal<CharsetEncoder>() {
+	@Override
+	protected CharsetEncoder initialValue() {
+		return StandardCharsets.UTF_8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+};
+/** Reused UTF-8 decoder, replaces malformed input like {@link String#String(byte[])} */
+private static final ThreadLocal<CharsetDecoder> UTF8_DECODER = new ThreadLocal<CharsetDecoder>() {
+	@Override
+	protected CharsetDecoder initialValue() {
+		return StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+};
+/** Reused decode output for direct buffers */
+private static final ThreadLocal<CharBuffer> UTF8_DECODE_BUFFER = new ThreadLocal<>();
+/** Largest decode output that is kept per thread, larger input gets its own buffer */
+private static final int UTF8_DECODE_BUFFER_MAX = 64 * 1024;
+
+	/**
+	 * Get the shared pool of heap buffers. Use for scratch space instead of allocating new arrays;
+	 * the array of a pooled buffer is available through {@link ByteBuffer#array()}.
+	 * @return shared pool of heap buffers
+	 */
+	public static BufferPool getHeapPool() {
+		return PoolHolder.HEAP_POOL;
+	}
+
+	/**
+	 * Get the shared pool of direct buffers. Use for scratch space for channel I/O.
+	 * @return shared pool of direct buffers
+	 */
+	public static BufferPool getDirectPool() {
+		return PoolHolder.DIRECT_POOL;
+	}
 
 	/**
-	 * Fully reads an input stream and returns the result as a whole array.
-	 * Uses a temporary buffer size of 512 bytes. If you know the approximately
-	 * size of the input stream, use {@link #readBytes(InputStream, int)} instead.
+	 * Fully reads an input stream and returns the result as a whole array. File streams are read
+	 * with one bulk read of their channel, other streams use {@link InputStream#available()} as a
+	 * size hint. If you know the approximately size of the input stream, use {@link
+	 * #readBytes(InputStream, int)} instead.
 	 * @param inputStream the input to read
 	 * @return the stream as a single byte buffer
+	 * @throws IOException if the stream couldn't be read
 	 */
-	public static byte[] readBytes(InputStream inputStream) {
-		return readBytes(inputStream, BUFFER_SIZE_DEFAULT);
+	public static byte[] readBytes(InputStream inputStream) throws IOException {
+		if (inputStream instanceof FileInputStream) {
+			FileChannel channel = ((FileInputStream) inputStream).getChannel();
+			return readBytes(channel, channel.size() - channel.position());
+		}
+		return readBytes(inputStream, inputStream.available());
 	}
 
 	/**
-	 * Fully reads an input stream and returns the result as a whole array
+	 * Fully reads an input stream and returns the result as a whole array. Reads into one buffer
+	 * that grows geometrically when the size hint is too small. If the size hint is exact no
+	 * extra copy is made.
 	 * @param inputStream the input to read
-	 * @param tempBufferSize temporary buffer size
-	 * @return the stream as a single byte buffer, null if inputStream is closed
-	 * or something else.
+	 * @param sizeHint expected number of bytes in the stream, 0 or less if unknown
+	 * @return the stream as a single byte buffer
+	 * @throws IOException if the stream couldn't be read
 	 */
-	public static byte[] readBytes(InputStream inputStream, int tempBufferSize) {
-		ArrayList<byte[]> byteBuffers = new ArrayList<>();
+	public static byte[] readBytes(InputStream inputStream, int sizeHint) throws IOException {
+		return readBytes(inputStream, sizeHint, MAX_ARRAY_SIZE);
+	}
+
+	/**
+	 * Fully reads an input stream, but fails as soon as it's larger than the specified maximum.
+	 * Use for untrusted input so that it can't run out of heap.
+	 * @param inputStream the input to read
+	 * @param sizeHint expected number of bytes in the stream, 0 or less if unknown
+	 * @param maxBytes maximum number of bytes to read
+	 * @return the stream as a single byte buffer
+	 * @throws IOException if the stream couldn't be read or has more than maxBytes bytes
+	 * @throws IllegalArgumentException if maxBytes is negative
+	 */
+	public static byte[] readBytes(InputStream inputStream, int sizeHint, int maxBytes) throws IOException {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+		}
+		int initialSize = sizeHint > 0 ? sizeHint : BUFFER_SIZE_DEFAULT;
+		byte[] buffer = new byte[Math.min(initialSize, Math.min(maxBytes, MAX_ARRAY_SIZE))];
 		int cReadBytesTotal = 0;
 
-		do {
-			byte[] readBytes = new byte[tempBufferSize];
-			int cReadBytes = 0;
-			try {
-				cReadBytes = inputStream.read(readBytes, 0, tempBufferSize);
-			} catch (IOException e) {
+		while (true) {
+			// Full, check for end of stream before growing
+			if (cReadBytesTotal == buffer.length) {
+				int nextByte = inputStream.read();
+				if (nextByte == -1) {
+					return buffer;
+				}
+				buffer = grow(buffer, cReadBytesTotal + 1, maxBytes);
+				buffer[cReadBytesTotal++] = (byte) nextByte;
 			}
 
+			int cReadBytes = inputStream.read(buffer, cReadBytesTotal, buffer.length - cReadBytesTotal);
+			if (cReadBytes == -1) {
+				break;
+			}
+			cReadBytesTotal += cReadBytes;
+		}
 
-			if (cReadBytes > 0) {
-				cReadBytesTotal += cReadBytes;
+		return cReadBytesTotal == buffer.length ? buffer : Arrays.copyOf(buffer, cReadBytesTotal);
+	}
 
+	/**
+	 * Fully reads a file with one bulk read of its channel
+	 * @param path the file to read
+	 * @return the file as a single byte buffer
+	 * @throws IOException if the file couldn't be read or is larger than 2 GB
+	 */
+	public static byte[] readBytes(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return readBytes(channel, channel.size());
+		}
+	}
 
-				// Read less than maximum, end of file
-				if (cReadBytes < tempBufferSize) {
-					// Copy value to a smaller buffer and append it to byte buffers
-					byte[] smallBuffer = new byte[cReadBytes];
-					System.arraycopy(readBytes, 0, smallBuffer, 0, cReadBytes);
-					byteBuffers.add(smallBuffer);
+	/**
+	 * Fully reads a channel from its current position
+	 * @param channel the channel to read
+	 * @param sizeHint expected number of bytes left in the channel, 0 or less if unknown
+	 * @return the channel content as a single byte buffer
+	 * @throws IOException if the channel couldn't be read or the content is larger than 2 GB
+	 */
+	public static byte[] readBytes(ReadableByteChannel channel, long sizeHint) throws IOException {
+		if (sizeHint > MAX_ARRAY_SIZE) {
+			throw new IOException("Too large to read into an array: " + sizeHint + " bytes");
+		}
+		return readBytes(channel, sizeHint, MAX_ARRAY_SIZE);
+	}
+
+	/**
+	 * Fully reads a channel from its current position, but fails as soon as the content is larger
+	 * than the specified maximum. Use for untrusted input so that it can't run out of heap.
+	 * @param channel the channel to read
+	 * @param sizeHint expected number of bytes left in the channel, 0 or less if unknown
+	 * @param maxBytes maximum number of bytes to read
+	 * @return the channel content as a single byte buffer
+	 * @throws IOException if the channel couldn't be read or has more than maxBytes bytes left
+	 * @throws IllegalArgumentException if maxBytes is negative
+	 */
+	public static byte[] readBytes(ReadableByteChannel channel, long sizeHint, int maxBytes) throws IOException {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+		}
+		if (sizeHint > maxBytes) {
+			throw new IOException("Larger than the maximum of " + maxBytes + " bytes: " + sizeHint + " bytes");
+		}
+
+		byte[] buffer = new byte[(int) Math.min(sizeHint > 0 ? sizeHint : BUFFER_SIZE_DEFAULT, Math.min(maxBytes, MAX_ARRAY_SIZE))];
+		ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+		while (true) {
+			// Full, check for end of stream before growing
+			if (!byteBuffer.hasRemaining()) {
+				ByteBuffer nextByte = ByteBuffer.allocate(1);
+				int cReadBytes;
+				do {
+					cReadBytes = channel.read(nextByte);
+				} while (cReadBytes == 0);
+				if (cReadBytes == -1) {
+					return buffer;
+				}
+				int position = byteBuffer.position();
+				buffer = grow(buffer, position + 1, maxBytes);
+				buffer[position] = nextByte.get(0);
+				byteBuffer = ByteBuffer.wrap(buffer);
+				byteBuffer.position(position + 1);
+			}
+
+			if (channel.read(byteBuffer) == -1) {
+				break;
+			}
+		}
+
+		int cReadBytesTotal = byteBuffer.position();
+		return cReadBytesTotal == buffer.length ? buffer : Arrays.copyOf(buffer, cReadBytesTotal);
+	}
+
+	/**
+	 * Memory map a file as read-only. Avoids copying the file into the heap at all, but keeps the
+	 * file mapped until the buffer is garbage collected.
+	 * @param path the file to map
+	 * @return read-only buffer of the whole file
+	 * @throws IOException if the file couldn't be mapped
+	 */
+	public static MappedByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * Grow the buffer geometrically
+	 * @param buffer the buffer to grow
+	 * @param minSize minimum size of the new buffer
+	 * @param maxSize maximum size of the new buffer
+	 * @return new buffer with the content of the old one
+	 * @throws IOException if the buffer can't grow larger
+	 */
+	private static byte[] grow(byte[] buffer, int minSize, int maxSize) throws IOException {
+		int limit = Math.min(maxSize, MAX_ARRAY_SIZE);
+		if (minSize > limit || minSize < 0) {
+			if (maxSize < MAX_ARRAY_SIZE) {
+				throw new IOException("Larger than the maximum of " + maxSize + " bytes");
+			}
+			throw new IOException("Too large to read into an array");
+		}
+		long newSize = Math.max((long) buffer.length * 2, minSize);
+		return Arrays.copyOf(buffer, (int) Math.min(newSize, limit));
+	}
+
+	/**
+	 * Read a stream chunk by chunk through one reused pooled buffer, without keeping the whole
+	 * stream in memory. Use when the stream only needs to be scanned, hashed or forwarded.
+	 * @param inputStream the stream to read
+	 * @param bufferSize size of the chunk buffer
+	 * @param consumer called for each chunk; the chunk is a heap buffer with the read bytes between
+	 * its position and limit and is only valid during the call
+	 * @return number of bytes read
+	 * @throws IOException if the stream couldn't be read or the consumer failed
+	 * @throws IllegalArgumentException if bufferSize isn't positive
+	 */
+	public static long forEachChunk(InputStream inputStream, int bufferSize, ChunkConsumer consumer) throws IOException {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+		}
+		BufferPool pool = getHeapPool();
+		ByteBuffer buffer = pool.acquire(bufferSize);
+		try {
+			byte[] array = buffer.array();
+			int offset = buffer.arrayOffset();
+			long cReadBytesTotal = 0;
+			while (true) {
+				int cReadBytes = inputStream.read(array, offset, bufferSize);
+				if (cReadBytes == -1) {
+					break;
+				}
+				cReadBytesTotal += cReadBytes;
+				if (cReadBytes > 0) {
+					buffer.limit(cReadBytes);
+					buffer.position(0);
+					if (!consumer.onChunk(buffer)) {
+						break;
+					}
+				}
+			}
+			return cReadBytesTotal;
+		} finally {
+			pool.release(buffer);
+		}
+	}
+
+	/**
+	 * Read a channel chunk by chunk through one reused pooled direct buffer, without keeping the
+	 * whole content in memory. Use when the content only needs to be scanned, hashed or forwarded.
+	 * @param channel the channel to read
+	 * @param bufferSize size of the chunk buffer
+	 * @param consumer called for each chunk; the chunk is a direct buffer with the read bytes
+	 * between its position and limit and is only valid during the call
+	 * @return number of bytes read
+	 * @throws IOException if the channel couldn't be read or the consumer failed
+	 * @throws IllegalArgumentException if bufferSize isn't positive
+	 */
+	public static long forEachChunk(ReadableByteChannel channel, int bufferSize, ChunkConsumer consumer) throws IOException {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+		}
+		BufferPool pool = getDirectPool();
+		ByteBuffer buffer = pool.acquire(bufferSize);
+		try {
+			long cReadBytesTotal = 0;
+			while (true) {
+				buffer.clear();
+				buffer.limit(bufferSize);
+				int cReadBytes = channel.read(buffer);
+				if (cReadBytes == -1) {
 					break;
+				}
+				cReadBytesTotal += cReadBytes;
+				if (cReadBytes > 0) {
+					buffer.flip();
+					if (!consumer.onChunk(buffer)) {
+						break;
+					}
+				}
+			}
+			return cReadBytesTotal;
+		} finally {
+			pool.release(buffer);
+		}
+	}
+
+	/**
+	 * Asynchronously read a whole file into a new heap buffer, in parallel 1 MB chunks
+	 * @param path the file to read
+	 * @return future of the file content with position 0 and limit at the file size. Cancelling
+	 * the future aborts all pending reads.
+	 * @see #readBytesAsync(Path, BufferPool, int)
+	 */
+	public static CompletableFuture<ByteBuffer> readBytesAsync(Path path) {
+		return readBytesAsync(path, null, ASYNC_CHUNK_SIZE);
+	}
+
+	/**
+	 * Asynchronously read a whole file with {@link AsynchronousFileChannel}. The file is split into
+	 * chunks that are read in parallel with positional reads, so the calling thread is never
+	 * blocked on disk.
+	 * @param path the file to read
+	 * @param pool the pool to acquire the buffer from, null to allocate a new heap buffer. The
+	 * caller is responsible for releasing the buffer to the pool when the future completed
+	 * successfully; on failure and cancellation it's released once all pending reads have stopped.
+	 * @param chunkSize size of the chunks that are read in parallel
+	 * @return future of the file content with position 0 and limit at the file size. Cancelling
+	 * the future aborts all pending reads.
+	 */
+	public static CompletableFuture<ByteBuffer> readBytesAsync(Path path, BufferPool pool, int chunkSize) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+		}
+
+		CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+		AsynchronousFileChannel channel;
+		long size;
+		try {
+			channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+		} catch (IOException e) {
+			future.completeExceptionally(e);
+			return future;
+		}
+		try {
+			size = channel.size();
+			if (size > MAX_ARRAY_SIZE) {
+				throw new IOException("Too large to read into a buffer: " + size + " bytes");
+			}
+		} catch (IOException e) {
+			closeQuietly(channel);
+			future.completeExceptionally(e);
+			return future;
+		}
+
+		ByteBuffer buffer = pool != null ? pool.acquire((int) size) : ByteBuffer.allocate((int) size);
+		new AsyncFileRead(channel, buffer, pool, future).start(chunkSize);
+		return future;
+	}
+
+	/**
+	 * Asynchronously read from a position of a file until the buffer is full or the end of the file
+	 * is reached
+	 * @param channel the file to read from
+	 * @param buffer the buffer to read into, from its position to its limit
+	 * @param position file position to start reading from
+	 * @return future of the same buffer, flipped so that it contains the read bytes
+	 */
+	public static CompletableFuture<ByteBuffer> readAsync(final AsynchronousFileChannel channel, final ByteBuffer buffer, final long position) {
+		final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+		final int startPosition = buffer.position();
+
+		channel.read(buffer, position, null, new CompletionHandler<Integer, Void>() {
+			@Override
+			public void completed(Integer cReadBytes, Void attachment) {
+				if (future.isDone()) {
+					return;
+				}
+				if (cReadBytes == -1 || !buffer.hasRemaining()) {
+					buffer.flip();
+					future.complete(buffer);
 				} else {
-					byteBuffers.add(readBytes);
+					channel.read(buffer, position + buffer.position() - startPosition, null, this);
 				}
-			} else {
+			}
+
+			@Override
+			public void failed(Throwable exc, Void attachment) {
+				future.completeExceptionally(exc);
+			}
+		});
+
+		return future;
+	}
+
+	/**
+	 * Close a channel and ignore any exception
+	 * @param channel the channel to close
+	 */
+	private static void closeQuietly(AsynchronousFileChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// Nothing more can be done
+		}
+	}
+
+	/**
+	 * Transfer all bytes from one channel to another
+	 * @param source the channel to read from
+	 * @param target the channel to write to
+	 * @return number of bytes transferred
+	 * @throws IOException if reading or writing failed
+	 * @see #transfer(ReadableByteChannel, WritableByteChannel, long, ProgressListener)
+	 */
+	public static long transfer(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+		return transfer(source, target, -1, null);
+	}
+
+	/**
+	 * Transfer bytes from one channel to another. If either side is a {@link FileChannel} the bytes
+	 * are transferred with {@link FileChannel#transferTo} or {@link FileChannel#transferFrom} so
+	 * that the operating system can copy them directly (e.g. sendfile). Otherwise the bytes are
+	 * copied through a pooled direct buffer. The position of file channels is advanced by the
+	 * number of bytes transferred. Progress channels are unwrapped so that the channels they wrap
+	 * can still be transferred directly. A non-blocking source is polled until it reaches its end.
+	 * @param source the channel to read from
+	 * @param target the channel to write to
+	 * @param maxBytes maximum number of bytes to transfer, -1 for no limit
+	 * @param listener called after every transferred chunk with the total bytes transferred so far
+	 * and maxBytes, can be null
+	 * @return number of bytes transferred
+	 * @throws IOException if reading or writing failed
+	 */
+	public static long transfer(ReadableByteChannel source, WritableByteChannel target, long maxBytes, ProgressListener listener) throws IOException {
+		if (source instanceof ReadableByteChannelProgress) {
+			return ((ReadableByteChannelProgress) source).transferTo(target, maxBytes, listener);
+		} else if (target instanceof WritableByteChannelProgress) {
+			return ((WritableByteChannelProgress) target).transferFrom(source, maxBytes, listener);
+		} else if (source instanceof FileChannel) {
+			return transferFromFile((FileChannel) source, target, maxBytes, listener);
+		} else if (target instanceof FileChannel) {
+			return transferToFile(source, (FileChannel) target, maxBytes, listener);
+		}
+
+		BufferPool pool = getDirectPool();
+		ByteBuffer buffer = pool.acquire(TRANSFER_BUFFER_SIZE);
+		try {
+			long cTransferred = 0;
+			while (maxBytes < 0 || cTransferred < maxBytes) {
+				buffer.clear();
+				if (maxBytes >= 0 && maxBytes - cTransferred < buffer.remaining()) {
+					buffer.limit((int) (maxBytes - cTransferred));
+				}
+				if (source.read(buffer) == -1) {
+					break;
+				}
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					cTransferred += target.write(buffer);
+				}
+				notifyTransfer(listener, cTransferred, maxBytes);
+			}
+			return cTransferred;
+		} finally {
+			pool.release(buffer);
+		}
+	}
+
+	/**
+	 * Transfer all bytes from an input stream to an output stream
+	 * @param source the stream to read from
+	 * @param target the stream to write to
+	 * @return number of bytes transferred
+	 * @throws IOException if reading or writing failed
+	 * @see #transfer(InputStream, OutputStream, long, ProgressListener)
+	 */
+	public static long transfer(InputStream source, OutputStream target) throws IOException {
+		return transfer(source, target, -1, null);
+	}
+
+	/**
+	 * Transfer bytes from an input stream to an output stream. File streams are transferred through
+	 * their channels, see {@link #transfer(ReadableByteChannel, WritableByteChannel, long,
+	 * ProgressListener)}. Other streams are copied through a pooled heap buffer.
+	 * @param source the stream to read from
+	 * @param target the stream to write to
+	 * @param maxBytes maximum number of bytes to transfer, -1 for no limit
+	 * @param listener called after every transferred chunk with the total bytes transferred so far
+	 * and maxBytes, can be null
+	 * @return number of bytes transferred
+	 * @throws IOException if reading or writing failed
+	 */
+	public static long transfer(InputStream source, OutputStream target, long maxBytes, ProgressListener listener) throws IOException {
+		if (source instanceof FileInputStream && target instanceof FileOutputStream) {
+			return transfer(((FileInputStream) source).getChannel(), ((FileOutputStream) target).getChannel(), maxBytes, listener);
+		}
+
+		BufferPool pool = getHeapPool();
+		ByteBuffer buffer = pool.acquire(TRANSFER_BUFFER_SIZE);
+		try {
+			byte[] array = buffer.array();
+			int offset = buffer.arrayOffset();
+			long cTransferred = 0;
+			while (maxBytes < 0 || cTransferred < maxBytes) {
+				int cReadBytes = source.read(array, offset, readLength(buffer, cTransferred, maxBytes));
+				if (cReadBytes == -1) {
+					break;
+				}
+				target.write(array, offset, cReadBytes);
+				cTransferred += cReadBytes;
+				notifyTransfer(listener, cTransferred, maxBytes);
+			}
+			return cTransferred;
+		} finally {
+			pool.release(buffer);
+		}
+	}
+
+	/**
+	 * Transfer all bytes from an input stream to a channel
+	 * @param source the stream to read from
+	 * @param target the channel to write to
+	 * @return number of bytes transferred
+	 * @throws IOException if reading or writing failed
+	 * @see #transfer(InputStream, WritableByteChannel, long, ProgressListener)
+	 */
+	public static long transfer(InputStream source, WritableByteChannel target) throws IOException {
+		return transfer(source, target, -1, null);
+	}
+
+	/**
+	 * Transfer bytes from an input stream to a channel. File streams are transferred through their
+	 * channel, see {@link #transfer(ReadableByteChannel, WritableByteChannel, long,
+	 * ProgressListener)}. Other streams are copied through a pooled heap buffer.
+	 * @param source the stream to read from
+	 * @param target the channel to write to
+	 * @param maxBytes maximum number of bytes to transfer, -1 for no limit
+	 * @param listener called after every transferred chunk with the total bytes transferred so far
+	 * and maxBytes, can be null
+	 * @return number of bytes transferred
+	 * @throws IOException if reading or writing failed
+	 */
+	public static long transfer(InputStream source, WritableByteChannel target, long maxBytes, ProgressListener listener) throws IOException {
+		if (source instanceof FileInputStream) {
+			return transfer(((FileInputStream) source).getChannel(), target, maxBytes, listener);
+		}
+
+		BufferPool pool = getHeapPool();
+		ByteBuffer buffer = pool.acquire(TRANSFER_BUFFER_SIZE);
+		try {
+			byte[] array = buffer.array();
+			int offset = buffer.arrayOffset();
+			long cTransferred = 0;
+			while (maxBytes < 0 || cTransferred < maxBytes) {
+				buffer.clear();
+				int cReadBytes = source.read(array, offset, readLength(buffer, cTransferred, maxBytes));
+				if (cReadBytes == -1) {
+					break;
+				}
+				buffer.limit(cReadBytes);
+				while (buffer.hasRemaining()) {
+					cTransferred += target.write(buffer);
+				}
+				notifyTransfer(listener, cTransferred, maxBytes);
+			}
+			return cTransferred;
+		} finally {
+			pool.release(buffer);
+		}
+	}
+
+	/**
+	 * Transfer all bytes from a channel to an output stream
+	 * @param source the channel to read from
+	 * @param target the stream to write to
+	 * @return number of bytes transferred
+	 * @throws IOException if reading or writing failed
+	 * @see #transfer(ReadableByteChannel, OutputStream, long, ProgressListener)
+	 */
+	public static long transfer(ReadableByteChannel source, OutputStream target) throws IOException {
+		return transfer(source, target, -1, null);
+	}
+
+	/**
+	 * Transfer bytes from a channel to an output stream. File streams are transferred through their
+	 * channel, see {@link #transfer(ReadableByteChannel, WritableByteChannel, long,
+	 * ProgressListener)}. Other streams are copied through a pooled heap buffer.
+	 * @param source the channel to read from
+	 * @param target the stream to write to
+	 * @param maxBytes maximum number of bytes to transfer, -1 for no limit
+	 * @param listener called after every transferred chunk with the total bytes transferred so far
+	 * and maxBytes, can be null
+	 * @return number of bytes transferred
+	 * @throws IOException if reading or writing failed
+	 */
+	public static long transfer(ReadableByteChannel source, OutputStream target, long maxBytes, ProgressListener listener) throws IOException {
+		if (target instanceof FileOutputStream) {
+			return transfer(source, ((FileOutputStream) target).getChannel(), maxBytes, listener);
+		}
+
+		BufferPool pool = getHeapPool();
+		ByteBuffer buffer = pool.acquire(TRANSFER_BUFFER_SIZE);
+		try {
+			byte[] array = buffer.array();
+			int offset = buffer.arrayOffset();
+			long cTransferred = 0;
+			while (maxBytes < 0 || cTransferred < maxBytes) {
+				buffer.clear();
+				buffer.limit(readLength(buffer, cTransferred, maxBytes));
+				int cReadBytes = source.read(buffer);
+				if (cReadBytes == -1) {
+					break;
+				}
+				target.write(array, offset, cReadBytes);
+				cTransferred += cReadBytes;
+				notifyTransfer(listener, cTransferred, maxBytes);
+			}
+			return cTransferred;
+		} finally {
+			pool.release(buffer);
+		}
+	}
+
+	/**
+	 * Transfer a whole file to a channel with {@link FileChannel#transferTo}
+	 * @param source the file to read
+	 * @param target the channel to write to
+	 * @return number of bytes transferred
+	 * @throws IOException if reading or writing failed
+	 */
+	public static long transfer(Path source, WritableByteChannel target) throws IOException {
+		return transfer(source, target, -1, null);
+	}
+
+	/**
+	 * Transfer a file to a channel with {@link FileChannel#transferTo}
+	 * @param source the file to read
+	 * @param target the channel to write to
+	 * @param maxBytes maximum number of bytes to transfer, -1 for no limit
+	 * @param listener called after every transferred chunk with the total bytes transferred so far
+	 * and maxBytes, can be null
+	 * @return number of bytes transferred
+	 * @throws IOException if reading or writing failed
+	 */
+	public static long transfer(Path source, WritableByteChannel target, long maxBytes, ProgressListener listener) throws IOException {
+		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+			return transfer(channel, target, maxBytes, listener);
+		}
+	}
+
+	/**
+	 * Transfer a whole file to an output stream
+	 * @param source the file to read
+	 * @param target the stream to write to
+	 * @return number of bytes transferred
+	 * @throws IOException if reading or writing failed
+	 */
+	public static long transfer(Path source, OutputStream target) throws IOException {
+		return transfer(source, target, -1, null);
+	}
+
+	/**
+	 * Transfer a file to an output stream. File streams are transferred with {@link
+	 * FileChannel#transferTo}, other streams through a pooled heap buffer.
+	 * @param source the file to read
+	 * @param target the stream to write to
+	 * @param maxBytes maximum number of bytes to transfer, -1 for no limit
+	 * @param listener called after every transferred chunk with the total bytes transferred so far
+	 * and maxBytes, can be null
+	 * @return number of bytes transferred
+	 * @throws IOException if reading or writing failed
+	 */
+	public static long transfer(Path source, OutputStream target, long maxBytes, ProgressListener listener) throws IOException {
+		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+			return transfer(channel, target, maxBytes, listener);
+		}
+	}
+
+	/**
+	 * Transfer from the current position of a file with {@link FileChannel#transferTo}
+	 * @param source the file to read
+	 * @param target the channel to write to
+	 * @param maxBytes maximum number of bytes to transfer, -1 for no limit
+	 * @param listener can be null
+	 * @return number of bytes transferred
+	 * @throws IOException if reading or writing failed
+	 */
+	private static long transferFromFile(FileChannel source, WritableByteChannel target, long maxBytes, ProgressListener listener) throws IOException {
+		long startPosition = source.position();
+		long position = startPosition;
+		long endPosition = source.size();
+		if (maxBytes >= 0 && maxBytes < endPosition - startPosition) {
+			endPosition = startPosition + maxBytes;
+		}
+
+		try {
+			while (position < endPosition) {
+				long cTransferred = source.transferTo(position, Math.min(endPosition - position, TRANSFER_CHUNK_SIZE), target);
+				// File was truncated
+				if (cTransferred == 0 && position >= source.size()) {
+					break;
+				}
+				position += cTransferred;
+				notifyTransfer(listener, position - startPosition, maxBytes);
+			}
+		} finally {
+			source.position(position);
+		}
+		return position - startPosition;
+	}
+
+	/**
+	 * Transfer to the current position of a file with {@link FileChannel#transferFrom}
+	 * @param source the channel to read from
+	 * @param target the file to write to
+	 * @param maxBytes maximum number of bytes to transfer, -1 for no limit
+	 * @param listener can be null
+	 * @return number of bytes transferred
+	 * @throws IOException if reading or writing failed
+	 */
+	private static long transferToFile(ReadableByteChannel source, FileChannel target, long maxBytes, ProgressListener listener) throws IOException {
+		long startPosition = target.position();
+		long position = startPosition;
+		BufferPool pool = getDirectPool();
+		ByteBuffer buffer = null;
+
+		try {
+			while (maxBytes < 0 || position - startPosition < maxBytes) {
+				long chunkSize = TRANSFER_CHUNK_SIZE;
+				if (maxBytes >= 0) {
+					chunkSize = Math.min(chunkSize, maxBytes - (position - startPosition));
+				}
+				long cTransferred = target.transferFrom(source, position, chunkSize);
+
+				// Returns 0 both at the end of the source and when a non-blocking source has no bytes
+				// yet, only a read tells them apart
+				if (cTransferred == 0) {
+					if (buffer == null) {
+						buffer = pool.acquire(TRANSFER_BUFFER_SIZE);
+					}
+					buffer.clear();
+					buffer.limit(readLength(buffer, position - startPosition, maxBytes));
+					if (source.read(buffer) == -1) {
+						break;
+					}
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						cTransferred += target.write(buffer, position + cTransferred);
+					}
+				}
+
+				if (cTransferred > 0) {
+					position += cTransferred;
+					notifyTransfer(listener, position - startPosition, maxBytes);
+				}
+			}
+		} finally {
+			target.position(position);
+			pool.release(buffer);
+		}
+		return position - startPosition;
+	}
+
+	/**
+	 * @param buffer the buffer to read into
+	 * @param cTransferred number of bytes transferred so far
+	 * @param maxBytes maximum number of bytes to transfer, -1 for no limit
+	 * @return number of bytes to read next
+	 */
+	private static int readLength(ByteBuffer buffer, long cTransferred, long maxBytes) {
+		int length = buffer.capacity();
+		if (maxBytes >= 0 && maxBytes - cTransferred < length) {
+			length = (int) (maxBytes - cTransferred);
+		}
+		return length;
+	}
+
+	/**
+	 * @param listener can be null
+	 * @param cTransferred number of bytes transferred so far
+	 * @param maxBytes maximum number of bytes to transfer, -1 for no limit
+	 */
+	private static void notifyTransfer(ProgressListener listener, long cTransferred, long maxBytes) {
+		if (listener != null) {
+			listener.onProgress(cTransferred, maxBytes);
+		}
+	}
+
+	/**
+	 * Calculate how many bytes the text takes when encoded as UTF-8
+	 * @param text the text to calculate the length of
+	 * @return number of bytes in UTF-8
+	 */
+	public static int utf8Length(CharSequence text) {
+		int length = text.length();
+		int cBytes = length;
+		for (int i = 0; i < length; ++i) {
+			char character = text.charAt(i);
+			if (character >= 0x800) {
+				// Valid surrogate pair is 4 bytes in total (2 + 2), lone surrogate is replaced by '?'
+				if (Character.isHighSurrogate(character) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+					cBytes += 2;
+					++i;
+				} else if (!Character.isSurrogate(character)) {
+					cBytes += 2;
+				}
+			} else if (character >= 0x80) {
+				cBytes += 1;
+			}
+		}
+		return cBytes;
+	}
+
+	/**
+	 * Encode the text as UTF-8 into a new array of the exact size
+	 * @param text the text to encode
+	 * @return text encoded as UTF-8
+	 */
+	public static byte[] encodeUtf8(CharSequence text) {
+		byte[] bytes = new byte[utf8Length(text)];
+		encodeUtf8(text, bytes, 0);
+		return bytes;
+	}
+
+	/**
+	 * Encode the text as UTF-8 into an existing array
+	 * @param text the text to encode
+	 * @param out the array to write to
+	 * @param offset where in the array to start writing
+	 * @return number of bytes written
+	 * @throws BufferOverflowException if the text doesn't fit, some bytes may have been written
+	 * @see #utf8Length(CharSequence)
+	 */
+	public static int encodeUtf8(CharSequence text, byte[] out, int offset) {
+		return encodeUtf8(text, ByteBuffer.wrap(out, offset, out.length - offset));
+	}
+
+	/**
+	 * Encode the text as UTF-8 into a buffer, starting at its position. ASCII is written directly,
+	 * the rest is encoded by a thread-local encoder without copying the text.
+	 * @param text the text to encode
+	 * @param out the buffer to write to, its position is advanced by the number of bytes written
+	 * @return number of bytes written
+	 * @throws BufferOverflowException if the text doesn't fit, some bytes may have been written
+	 * @see #utf8Length(CharSequence)
+	 */
+	public static int encodeUtf8(CharSequence text, ByteBuffer out) {
+		int startPosition = out.position();
+		int length = text.length();
+		int i = 0;
+
+		// ASCII
+		if (out.hasArray()) {
+			byte[] array = out.array();
+			int arrayOffset = out.arrayOffset() + startPosition;
+			int asciiLimit = Math.min(length, out.remaining());
+			for (; i < asciiLimit; ++i) {
+				char character = text.charAt(i);
+				if (character >= 0x80) {
+					break;
+				}
+				array[arrayOffset + i] = (byte) character;
+			}
+			out.position(startPosition + i);
+		} else {
+			for (; i < length && out.hasRemaining(); ++i) {
+				char character = text.charAt(i);
+				if (character >= 0x80) {
+					break;
+				}
+				out.put((byte) character);
+			}
+		}
+
+		// Rest
+		if (i < length) {
+			CharsetEncoder encoder = UTF8_ENCODER.get();
+			encoder.reset();
+			CoderResult result = encoder.encode(CharBuffer.wrap(text, i, length), out, true);
+			if (result.isUnderflow()) {
+				result = encoder.flush(out);
+			}
+			if (result.isOverflow()) {
+				throw new BufferOverflowException();
+			}
+		}
+
+		return out.position() - startPosition;
+	}
+
+	/**
+	 * Decode UTF-8 bytes to a string
+	 * @param bytes the bytes to decode
+	 * @param offset first byte to decode
+	 * @param length number of bytes to decode
+	 * @return decoded string
+	 */
+	public static String decodeUtf8(byte[] bytes, int offset, int length) {
+		return new String(bytes, offset, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Decode all remaining UTF-8 bytes in the buffer to a string. Heap buffers are decoded directly
+	 * from their backing array, direct buffers through a thread-local decoder and char buffer (only
+	 * kept for up to 64K chars).
+	 * @param in the buffer to decode, its position is advanced to its limit
+	 * @return decoded string
+	 */
+	public static String decodeUtf8(ByteBuffer in) {
+		if (in.hasArray()) {
+			String string = decodeUtf8(in.array(), in.arrayOffset() + in.position(), in.remaining());
+			in.position(in.limit());
+			return string;
+		}
+
+		// UTF-8 never decodes to more chars than bytes
+		CharBuffer chars;
+		if (in.remaining() > UTF8_DECODE_BUFFER_MAX) {
+			chars = CharBuffer.allocate(in.remaining());
+		} else {
+			chars = UTF8_DECODE_BUFFER.get();
+			if (chars == null || chars.capacity() < in.remaining()) {
+				chars = CharBuffer.allocate(Math.max(in.remaining(), BUFFER_SIZE_DEFAULT));
+				UTF8_DECODE_BUFFER.set(chars);
+			}
+		}
+		chars.clear();
+		decodeUtf8(in, chars);
+		return new String(chars.array(), 0, chars.position());
+	}
+
+	/**
+	 * Decode the remaining UTF-8 bytes in the buffer into a char buffer. ASCII is read directly, the
+	 * rest is decoded by a thread-local decoder.
+	 * @param in the buffer to decode, its position is advanced by the number of bytes read
+	 * @param out the buffer to write to, its position is advanced by the number of chars written
+	 * @return number of chars written
+	 * @throws BufferOverflowException if the decoded text doesn't fit, some chars may have been
+	 * written
+	 */
+	public static int decodeUtf8(ByteBuffer in, CharBuffer out) {
+		int startPosition = out.position();
+
+		// ASCII
+		while (in.hasRemaining() && out.hasRemaining()) {
+			byte value = in.get(in.position());
+			if (value < 0) {
 				break;
 			}
+			out.put((char) value);
+			in.position(in.position() + 1);
+		}
+
+		// Rest
+		if (in.hasRemaining()) {
+			CharsetDecoder decoder = UTF8_DECODER.get();
+			decoder.reset();
+			CoderResult result = decoder.decode(in, out, true);
+			if (result.isUnderflow()) {
+				result = decoder.flush(out);
+			}
+			if (result.isOverflow()) {
+				throw new BufferOverflowException();
+			}
+		}
 
-		} while (true);
+		return out.position() - startPosition;
+	}
 
-		// Merge all to one big buffer
-		byte[] wholeByteArray = new byte[cReadBytesTotal];
-		int offset = 0;
-		for (byte[] partBuffer : byteBuffers) {
-			System.arraycopy(partBuffer, 0, wholeByteArray, offset, partBuffer.length);
-			offset += partBuffer.length;
+	/**
+	 * Consumes chunks read by {@link #forEachChunk(InputStream, int, ChunkConsumer)}
+	 */
+	public interface ChunkConsumer {
+		/**
+		 * Called for each chunk that was read
+		 * @param chunk the read bytes between position and limit, only valid during the call
+		 * @return true to continue reading, false to stop
+		 * @throws IOException if the chunk couldn't be consumed, stops the reading
+		 */
+		boolean onChunk(ByteBuffer chunk) throws IOException;
+	}
+
+	/**
+	 * Reads a whole file in parallel chunks into one buffer
+	 */
+	private static class AsyncFileRead implements CompletionHandler<Integer, ByteBuffer> {
+		private final AsynchronousFileChannel mChannel;
+		private final ByteBuffer mBuffer;
+		private final BufferPool mPool;
+		private final CompletableFuture<ByteBuffer> mFuture;
+		/** Number of chunks that haven't stopped reading yet */
+		private final AtomicInteger mcPendingChunks = new AtomicInteger();
+
+		private AsyncFileRead(AsynchronousFileChannel channel, ByteBuffer buffer, BufferPool pool, CompletableFuture<ByteBuffer> future) {
+			mChannel = channel;
+			mBuffer = buffer;
+			mPool = pool;
+			mFuture = future;
 		}
 
-		return wholeByteArray;
+		/**
+		 * Start reading all chunks
+		 * @param chunkSize size of each chunk
+		 */
+		private void start(int chunkSize) {
+			int size = mBuffer.limit();
+			if (size == 0) {
+				closeQuietly(mChannel);
+				mFuture.complete(mBuffer);
+				return;
+			}
+
+			// Abort pending reads when cancelled or failed
+			mFuture.whenComplete(new BiConsumer<ByteBuffer, Throwable>() {
+				@Override
+				public void accept(ByteBuffer buffer, Throwable throwable) {
+					if (throwable != null) {
+						closeQuietly(mChannel);
+					}
+				}
+			});
+
+			int cChunks = (size + chunkSize - 1) / chunkSize;
+			mcPendingChunks.set(cChunks);
+			for (int i = 0; i < cChunks; ++i) {
+				ByteBuffer chunk = mBuffer.duplicate();
+				int chunkStart = i * chunkSize;
+				chunk.limit(Math.min(chunkStart + chunkSize, size));
+				chunk.position(chunkStart);
+				mChannel.read(chunk, chunkStart, chunk, this);
+			}
+		}
+
+		@Override
+		public void completed(Integer cReadBytes, ByteBuffer chunk) {
+			if (mFuture.isDone()) {
+				chunkStopped();
+			} else if (cReadBytes == -1) {
+				mFuture.completeExceptionally(new EOFException("File was truncated while reading"));
+				chunkStopped();
+			} else if (chunk.hasRemaining()) {
+				// Buffer positions equal file positions
+				mChannel.read(chunk, chunk.position(), chunk, this);
+			} else {
+				chunkStopped();
+			}
+		}
+
+		@Override
+		public void failed(Throwable exc, ByteBuffer chunk) {
+			mFuture.completeExceptionally(exc);
+			chunkStopped();
+		}
+
+		/**
+		 * Called when a chunk has been fully read or has stopped reading
+		 */
+		private void chunkStopped() {
+			if (mcPendingChunks.decrementAndGet() == 0) {
+				closeQuietly(mChannel);
+				if (!mFuture.complete(mBuffer) && mPool != null) {
+					mPool.release(mBuffer);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the shared pools the first time they are used
+	 */
+	private static class PoolHolder {
+		private static final BufferPool HEAP_POOL = new BufferPool(false);
+		private static final BufferPool DIRECT_POOL = new BufferPool(true);
 	}
 }
@@ -0,0 +1,252 @@
+package io.blushine.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Output stream that writes into a list of fixed-size chunks instead of one growing array. Unlike
+ * {@link java.io.ByteArrayOutputStream} it never copies what has already been written when it
+ * grows, and the content can be read without flattening it into one array, either as a {@link
+ * ByteBuffer} array for gathering writes or as an {@link InputStream}.
+ */
+public class ChunkedOutputStream extends OutputStream {
+/** Default chunk size */
+private static final int CHUNK_SIZE_DEFAULT = 8 * 1024;
+private final int mChunkSize;
+private final List<byte[]> mChunks = new ArrayList<>();
+/** Current chunk that is written to, null if none */
+private byte[] mCurrentChunk = null;
+/** Number of bytes written to the current chunk */
+private int mCurrentChunkSize = 0;
+private long mSize = 0;
+
+/**
+ * Create a stream with 8 KB chunks
+ */
+public ChunkedOutputStream() {
+	this(CHUNK_SIZE_DEFAULT);
+}
+
+/**
+ * Create a stream
+ * @param chunkSize size of each chunk
+ */
+public ChunkedOutputStream(int chunkSize) {
+	if (chunkSize <= 0) {
+		throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+	}
+	mChunkSize = chunkSize;
+}
+
+@Override
+public void write(int b) {
+	if (mCurrentChunk == null || mCurrentChunkSize == mChunkSize) {
+		addChunk();
+	}
+	mCurrentChunk[mCurrentChunkSize++] = (byte) b;
+	mSize++;
+}
+
+@Override
+public void write(byte[] b, int off, int len) {
+	if (off < 0 || len < 0 || len > b.length - off) {
+		throw new IndexOutOfBoundsException();
+	}
+
+	while (len > 0) {
+		if (mCurrentChunk == null || mCurrentChunkSize == mChunkSize) {
+			addChunk();
+		}
+		int cCopy = Math.min(len, mChunkSize - mCurrentChunkSize);
+		System.arraycopy(b, off, mCurrentChunk, mCurrentChunkSize, cCopy);
+		mCurrentChunkSize += cCopy;
+		mSize += cCopy;
+		off += cCopy;
+		len -= cCopy;
+	}
+}
+
+/**
+ * Add a new chunk and make it the current one
+ */
+private void addChunk() {
+	mCurrentChunk = new byte[mChunkSize];
+	mCurrentChunkSize = 0;
+	mChunks.add(mCurrentChunk);
+}
+
+/**
+ * @return total number of bytes written
+ */
+public long size() {
+	return mSize;
+}
+
+/**
+ * Remove all written bytes. Keeps the first chunk to be reused
+ */
+public void reset() {
+	if (mChunks.size() > 1) {
+		mChunks.subList(1, mChunks.size()).clear();
+	}
+	mCurrentChunk = mChunks.isEmpty() ? null : mChunks.get(0);
+	mCurrentChunkSize = 0;
+	mSize = 0;
+}
+
+/**
+ * @return number of chunks with content
+ */
+public int getChunkCount() {
+	return mSize == 0 ? 0 : mChunks.size();
+}
+
+/**
+ * @param index index of the chunk
+ * @return the chunk's backing array, only the first {@link #getChunkLength(int)} bytes are used
+ */
+public byte[] getChunk(int index) {
+	return mChunks.get(index);
+}
+
+/**
+ * @param index index of the chunk
+ * @return number of used bytes in the chunk
+ */
+public int getChunkLength(int index) {
+	return index == mChunks.size() - 1 ? mCurrentChunkSize : mChunkSize;
+}
+
+/**
+ * Get the content as buffers that wrap the chunks, no bytes are copied. The buffers are only valid
+ * until the stream is written to or reset.
+ * @return one buffer per chunk
+ */
+public ByteBuffer[] toByteBuffers() {
+	ByteBuffer[] buffers = new ByteBuffer[getChunkCount()];
+	for (int i = 0; i < buffers.length; ++i) {
+		buffers[i] = ByteBuffer.wrap(mChunks.get(i), 0, getChunkLength(i));
+	}
+	return buffers;
+}
+
+/**
+ * Write the whole content to a channel with gathering writes
+ * @param channel the channel to write to
+ * @return number of bytes written
+ * @throws IOException if the channel couldn't be written to
+ */
+public long writeTo(GatheringByteChannel channel) throws IOException {
+	ByteBuffer[] buffers = toByteBuffers();
+	long cWritten = 0;
+	int first = 0;
+	while (cWritten < mSize) {
+		cWritten += channel.write(buffers, first, buffers.length - first);
+		while (first < buffers.length && !buffers[first].hasRemaining()) {
+			first++;
+		}
+	}
+	return cWritten;
+}
+
+/**
+ * Write the whole content to a stream
+ * @param outputStream the stream to write to
+ * @throws IOException if the stream couldn't be written to
+ */
+public void writeTo(OutputStream outputStream) throws IOException {
+	for (int i = 0; i < getChunkCount(); ++i) {
+		outputStream.write(mChunks.get(i), 0, getChunkLength(i));
+	}
+}
+
+/**
+ * Get an input stream that reads the content directly from the chunks. The stream is only valid
+ * until this stream is written to or reset.
+ * @return input stream of the content
+ */
+public InputStream toInputStream() {
+	return new ChunkedInputStream();
+}
+
+/**
+ * Copy the whole content into one array. Prefer {@link #toByteBuffers()}, {@link
+ * #toInputStream()} or one of the writeTo methods when possible.
+ * @return copy of the content
+ * @throws IllegalStateException if the content is too large for an array
+ */
+public byte[] toByteArray() {
+	if (mSize > Integer.MAX_VALUE - 8) {
+		throw new IllegalStateException("Too large for an array: " + mSize + " bytes");
+	}
+
+	byte[] bytes = new byte[(int) mSize];
+	int offset = 0;
+	for (int i = 0; i < getChunkCount(); ++i) {
+		int length = getChunkLength(i);
+		System.arraycopy(mChunks.get(i), 0, bytes, offset, length);
+		offset += length;
+	}
+	return bytes;
+}
+
+/**
+ * Reads directly from the chunks
+ */
+private class ChunkedInputStream extends InputStream {
+	private int mChunkIndex = 0;
+	private int mChunkPosition = 0;
+	private long mcRemaining = mSize;
+
+	@Override
+	public int read() {
+		if (mcRemaining == 0) {
+			return -1;
+		}
+		nextChunkIfEmpty();
+		mcRemaining--;
+		return mChunks.get(mChunkIndex)[mChunkPosition++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0) {
+			return 0;
+		}
+		if (mcRemaining == 0) {
+			return -1;
+		}
+
+		int cRead = 0;
+		while (cRead < len && mcRemaining > 0) {
+			nextChunkIfEmpty();
+			int cCopy = Math.min(len - cRead, getChunkLength(mChunkIndex) - mChunkPosition);
+			System.arraycopy(mChunks.get(mChunkIndex), mChunkPosition, b, off + cRead, cCopy);
+			mChunkPosition += cCopy;
+			cRead += cCopy;
+			mcRemaining -= cCopy;
+		}
+		return cRead;
+	}
+
+	@Override
+	public int available() {
+		return (int) Math.min(mcRemaining, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Move to the next chunk if the current one has been read
+	 */
+	private void nextChunkIfEmpty() {
+		if (mChunkPosition == getChunkLength(mChunkIndex)) {
+			mChunkIndex++;
+			mChunkPosition = 0;
+		}
+	}
+}
+}
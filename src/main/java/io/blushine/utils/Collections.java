@@ -1,16 +1,24 @@
 package io.blushine.utils;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.function.Supplier;
 
 /**
  * Class for common collection operations
  */
 public class Collections {
+/** Lists up to this size are always searched linearly */
+private static final int LINEAR_SEARCH_MAX_SIZE = 8;
+/** Build a hash index when list size * number of searched elements exceeds this */
+private static final long HASH_INDEX_MIN_WORK = 64;
+/** Use galloping search when one sorted array is this many times larger than the other */
+private static final int GALLOP_RATIO = 16;
+
 /**
  * Computes the previous index of an array, i.e. it wraps the index from the front to
  * back if needed.
@@ -88,19 +96,42 @@ public static int wrapIndex(final List<?> array, int index) {
  * @return correct wrapped index
  */
 public static int wrapIndex(int size, int index) {
-	int correctIndex = index;
+	int correctIndex = index % size;
 	
 	// Negative
-	while (correctIndex < 0) {
+	if (correctIndex < 0) {
 		correctIndex += size;
 	}
 	
-	// Larger
-	while (correctIndex >= size) {
-		correctIndex -= size;
+	return correctIndex;
+}
+
+/**
+ * Wraps an index/sequence of an array so that the index always is valid
+ * @param size the size of the array/list
+ * @param index the index to wrap
+ * @return correct wrapped index
+ */
+public static int wrapIndex(int size, long index) {
+	long correctIndex = index % size;
+	
+	// Negative
+	if (correctIndex < 0) {
+		correctIndex += size;
 	}
 	
-	return correctIndex;
+	return (int) correctIndex;
+}
+
+/**
+ * Wraps an index/sequence of an array by masking, faster than {@link #wrapIndex(int, long)}
+ * @param size the size of the array/list, must be a power of two
+ * @param index the index to wrap, negative indices are wrapped too
+ * @return correct wrapped index
+ * @see Maths#nextPowerOfTwo(int)
+ */
+public static int wrapIndexPowerOfTwo(int size, long index) {
+	return (int) (index & (size - 1));
 }
 
 /**
@@ -112,15 +143,81 @@ public static int wrapIndex(int size, int index) {
  * @param highIndex to this (or to the previous)
  * @param highInclude set to true to include highIndex in the returned list
  * @return list of all indices between
+ * @see #getIndicesBetween(int, int, boolean, int, boolean, IntRange) to avoid boxing
  */
 public static ArrayList<Integer> getIndicesBetween(int size, int lowIndex, boolean lowInclude, int highIndex, boolean highInclude) {
-	ArrayList<Integer> indices = new ArrayList<>();
-	
+	IntRange range = getIndicesBetween(size, lowIndex, lowInclude, highIndex, highInclude, new IntRange());
+	ArrayList<Integer> indices = new ArrayList<>(range.size());
+	for (int i = 0; i < range.size(); ++i) {
+		indices.add(range.get(i));
+	}
+	return indices;
+}
+
+/**
+ * Sets the range to all the indices between the specified low and high indices. Same as
+ * {@link #getIndicesBetween(int, int, boolean, int, boolean)} but without allocating or boxing.
+ * @param size the size of the list/array
+ * @param lowIndex from this (or from the next)
+ * @param lowInclude set to true to include lowIndex in the range
+ * @param highIndex to this (or to the previous)
+ * @param highInclude set to true to include highIndex in the range
+ * @param range the range to set, can be reused
+ * @return same range
+ */
+public static IntRange getIndicesBetween(int size, int lowIndex, boolean lowInclude, int highIndex, boolean highInclude, IntRange range) {
+	if (lowIndex < highIndex) {
+		int startIndex = lowInclude ? lowIndex : lowIndex + 1;
+		int endIndex = highInclude ? highIndex : highIndex - 1;
+		return range.set(startIndex, endIndex - startIndex + 1);
+	}
+	// Wrapped
+	else {
+		int startIndex = highInclude ? highIndex : nextIndex(size, highIndex);
+		int endIndex = lowInclude ? nextIndex(size, lowIndex) : lowIndex;
+		return range.setWrapped(size, startIndex, wrapIndex(size, endIndex - startIndex));
+	}
+}
+
+/**
+ * Adds all the indices between the specified low and high indices to the list. Same as {@link
+ * #getIndicesBetween(int, int, boolean, int, boolean)} but without boxing.
+ * @param size the size of the list/array
+ * @param lowIndex from this (or from the next)
+ * @param lowInclude set to true to include lowIndex in the list
+ * @param highIndex to this (or to the previous)
+ * @param highInclude set to true to include highIndex in the list
+ * @param indices the list to add the indices to, is cleared first
+ * @return same list
+ */
+public static IntList getIndicesBetween(int size, int lowIndex, boolean lowInclude, int highIndex, boolean highInclude, IntList indices) {
+	IntRange range = getIndicesBetween(size, lowIndex, lowInclude, highIndex, highInclude, new IntRange());
+	indices.clear();
+	indices.ensureCapacity(range.size());
+	for (int i = 0; i < range.size(); ++i) {
+		indices.add(range.get(i));
+	}
+	return indices;
+}
+
+/**
+ * Writes all the indices between the specified low and high indices to the array. Same as {@link
+ * #getIndicesBetween(int, int, boolean, int, boolean)} but without allocating or boxing.
+ * @param size the size of the list/array
+ * @param lowIndex from this (or from the next)
+ * @param lowInclude set to true to include lowIndex in the array
+ * @param highIndex to this (or to the previous)
+ * @param highInclude set to true to include highIndex in the array
+ * @param indices the array to write the indices to, an array of length size is always large enough
+ * @return number of indices written
+ */
+public static int getIndicesBetween(int size, int lowIndex, boolean lowInclude, int highIndex, boolean highInclude, int[] indices) {
+	int count = 0;
 	if (lowIndex < highIndex) {
 		int startIndex = lowInclude ? lowIndex : lowIndex + 1;
 		int endIndex = highInclude ? highIndex : highIndex - 1;
 		for (int i = startIndex; i <= endIndex; ++i) {
-			indices.add(i);
+			indices[count++] = i;
 		}
 	}
 	// Wrapped
@@ -128,11 +225,10 @@ public static ArrayList<Integer> getIndicesBetween(int size, int lowIndex, boole
 		int startIndex = highInclude ? highIndex : nextIndex(size, highIndex);
 		int endIndex = lowInclude ? nextIndex(size, lowIndex) : lowIndex;
 		for (int i = startIndex; i != endIndex; i = nextIndex(size, i)) {
-			indices.add(i);
+			indices[count++] = i;
 		}
 	}
-	
-	return indices;
+	return count;
 }
 
 /**
@@ -161,22 +257,890 @@ public static boolean listContains(List<?> list, Object object, boolean identity
 }
 
 /**
- * Fill a collection with new elements
+ * Checks if a list contains all the specified elements. Builds a temporary hash index of the list
+ * when there are many elements to check, otherwise uses linear search.
+ * @param list the list to search in
+ * @param elements all the elements to search for
+ * @param identity set to true to compare by identity, false to compare with equals
+ * @return true if the list contains all elements
+ */
+public static boolean containsAll(List<?> list, Collection<?> elements, boolean identity) {
+	if (useHashIndex(list.size(), elements.size())) {
+		ListIndex index = new ListIndex(list, identity);
+		for (Object element : elements) {
+			if (!index.contains(element)) {
+				return false;
+			}
+		}
+	} else {
+		for (Object element : elements) {
+			if (indexOf(list, element, identity) == -1) {
+				return false;
+			}
+		}
+	}
+	return true;
+}
+
+/**
+ * Removes all elements from a collection that aren't in the list. Builds a temporary hash index of
+ * the list when there are many elements to check, otherwise uses linear search.
+ * @param <ElementType> the element type
+ * @param retainFrom the collection to remove elements from
+ * @param list only retain elements in this list
+ * @param identity set to true to compare by identity, false to compare with equals
+ * @return true if any element was removed
+ */
+public static <ElementType> boolean retainMatching(Collection<ElementType> retainFrom, List<?> list, boolean identity) {
+	ListIndex index = useHashIndex(list.size(), retainFrom.size()) ? new ListIndex(list, identity) : null;
+	boolean removed = false;
+
+	Iterator<ElementType> iterator = retainFrom.iterator();
+	while (iterator.hasNext()) {
+		ElementType element = iterator.next();
+		boolean found = index != null ? index.contains(element) : indexOf(list, element, identity) != -1;
+		if (!found) {
+			iterator.remove();
+			removed = true;
+		}
+	}
+
+	return removed;
+}
+
+/**
+ * Searches for the first index of each element in the list. Builds a temporary hash index of the
+ * list when there are many elements to search for, otherwise uses linear search.
+ * @param list the list to search in
+ * @param elements all the elements to search for
+ * @param identity set to true to compare by identity, false to compare with equals
+ * @return index in list for each element, -1 if the element wasn't found
+ */
+public static int[] indexOfEach(List<?> list, List<?> elements, boolean identity) {
+	int[] indices = new int[elements.size()];
+	indexOfEach(list, elements, identity, indices);
+	return indices;
+}
+
+/**
+ * Searches for the first index of each element in the list. Builds a temporary hash index of the
+ * list when there are many elements to search for, otherwise uses linear search.
+ * @param list the list to search in
+ * @param elements all the elements to search for
+ * @param identity set to true to compare by identity, false to compare with equals
+ * @param indices set to the index in list for each element, -1 if the element wasn't found. Must
+ * be at least as long as elements
+ * @return number of elements that were found
+ */
+public static int indexOfEach(List<?> list, List<?> elements, boolean identity, int[] indices) {
+	ListIndex index = useHashIndex(list.size(), elements.size()) ? new ListIndex(list, identity) : null;
+	int cFound = 0;
+
+	int i = 0;
+	for (Object element : elements) {
+		int foundIndex = index != null ? index.indexOf(element) : indexOf(list, element, identity);
+		indices[i++] = foundIndex;
+		if (foundIndex != -1) {
+			cFound++;
+		}
+	}
+
+	return cFound;
+}
+
+/**
+ * Checks if building a hash index is worth it
+ * @param listSize size of the list to search in
+ * @param cElements number of elements to search for
+ * @return true if a hash index should be used, false for linear search
+ */
+private static boolean useHashIndex(int listSize, int cElements) {
+	return listSize > LINEAR_SEARCH_MAX_SIZE && (long) listSize * cElements > HASH_INDEX_MIN_WORK;
+}
+
+/**
+ * Linear search for the first index of an element
+ * @param list the list to search in
+ * @param element the element to search for, null only matches null
+ * @param identity set to true to compare by identity, false to compare with equals
+ * @return first index of element in list, -1 if not found
+ */
+private static int indexOf(List<?> list, Object element, boolean identity) {
+	ListIterator<?> iterator = list.listIterator();
+	while (iterator.hasNext()) {
+		Object listObject = iterator.next();
+		if (listObject == element || (!identity && listObject != null && listObject.equals(element))) {
+			return iterator.previousIndex();
+		}
+	}
+	return -1;
+}
+
+/**
+ * Intersection of two sorted int sets
+ * @param a sorted values without duplicates
+ * @param b sorted values without duplicates
+ * @param out the values in both a and b, sorted. Can be the same array as a or b
+ * @return number of values written to out
+ * @see #intersectSorted(int[], int, int[], int, int[])
+ */
+public static int intersectSorted(int[] a, int[] b, int[] out) {
+	return intersectSorted(a, a.length, b, b.length, out);
+}
+
+/**
+ * Intersection of two sorted int sets. Uses galloping search when one set is much larger than the
+ * other, otherwise a linear merge.
+ * @param a sorted values without duplicates
+ * @param aLength number of values to use in a
+ * @param b sorted values without duplicates
+ * @param bLength number of values to use in b
+ * @param out the values in both a and b, sorted. Can be the same array as a or b, must be at least
+ * min(aLength, bLength) long
+ * @return number of values written to out
+ */
+public static int intersectSorted(int[] a, int aLength, int[] b, int bLength, int[] out) {
+	// Make a the smaller one
+	if (aLength > bLength) {
+		int[] tempArray = a;
+		a = b;
+		b = tempArray;
+		int tempLength = aLength;
+		aLength = bLength;
+		bLength = tempLength;
+	}
+	if (aLength == 0) {
+		return 0;
+	}
+
+	int cOut = 0;
+	if (bLength / aLength >= GALLOP_RATIO) {
+		int bIndex = 0;
+		for (int aIndex = 0; aIndex < aLength && bIndex < bLength; ++aIndex) {
+			int value = a[aIndex];
+			bIndex = gallop(b, bIndex, bLength, value);
+			if (bIndex < bLength && b[bIndex] == value) {
+				out[cOut++] = value;
+				bIndex++;
+			}
+		}
+	} else {
+		int aIndex = 0;
+		int bIndex = 0;
+		while (aIndex < aLength && bIndex < bLength) {
+			int aValue = a[aIndex];
+			int bValue = b[bIndex];
+			if (aValue < bValue) {
+				aIndex++;
+			} else if (aValue > bValue) {
+				bIndex++;
+			} else {
+				out[cOut++] = aValue;
+				aIndex++;
+				bIndex++;
+			}
+		}
+	}
+	return cOut;
+}
+
+/**
+ * Intersection of many sorted int sets. Starts with the smallest set and intersects it with the
+ * others one at a time.
+ * @param arrays sorted values without duplicates
+ * @param lengths number of values to use in each array, null to use the whole arrays
+ * @param out the values in all arrays, sorted. Must be at least as long as the shortest array
+ * @return number of values written to out
+ */
+public static int intersectSorted(int[][] arrays, int[] lengths, int[] out) {
+	if (arrays.length == 0) {
+		return 0;
+	}
+
+	int smallest = 0;
+	for (int i = 1; i < arrays.length; ++i) {
+		if (length(arrays, lengths, i) < length(arrays, lengths, smallest)) {
+			smallest = i;
+		}
+	}
+
+	int cOut = length(arrays, lengths, smallest);
+	System.arraycopy(arrays[smallest], 0, out, 0, cOut);
+	for (int i = 0; i < arrays.length && cOut > 0; ++i) {
+		if (i != smallest) {
+			cOut = intersectSorted(out, cOut, arrays[i], length(arrays, lengths, i), out);
+		}
+	}
+	return cOut;
+}
+
+/**
+ * Union of two sorted int sets
+ * @param a sorted values without duplicates
+ * @param b sorted values without duplicates
+ * @param out the values in a or b, sorted. Must not be a or b
+ * @return number of values written to out
+ * @see #unionSorted(int[], int, int[], int, int[])
+ */
+public static int unionSorted(int[] a, int[] b, int[] out) {
+	return unionSorted(a, a.length, b, b.length, out);
+}
+
+/**
+ * Union of two sorted int sets. Uses galloping search and bulk copies when one set is much larger
+ * than the other, otherwise a linear merge.
+ * @param a sorted values without duplicates
+ * @param aLength number of values to use in a
+ * @param b sorted values without duplicates
+ * @param bLength number of values to use in b
+ * @param out the values in a or b, sorted. Must not be a or b, must be at least aLength + bLength
+ * long
+ * @return number of values written to out
+ */
+public static int unionSorted(int[] a, int aLength, int[] b, int bLength, int[] out) {
+	// Make a the smaller one
+	if (aLength > bLength) {
+		int[] tempArray = a;
+		a = b;
+		b = tempArray;
+		int tempLength = aLength;
+		aLength = bLength;
+		bLength = tempLength;
+	}
+
+	int cOut = 0;
+	int aIndex = 0;
+	int bIndex = 0;
+	if (aLength > 0 && bLength / aLength >= GALLOP_RATIO) {
+		for (; aIndex < aLength; ++aIndex) {
+			int value = a[aIndex];
+			int nextBIndex = gallop(b, bIndex, bLength, value);
+			System.arraycopy(b, bIndex, out, cOut, nextBIndex - bIndex);
+			cOut += nextBIndex - bIndex;
+			bIndex = nextBIndex;
+
+			out[cOut++] = value;
+			if (bIndex < bLength && b[bIndex] == value) {
+				bIndex++;
+			}
+		}
+	} else {
+		while (aIndex < aLength && bIndex < bLength) {
+			int aValue = a[aIndex];
+			int bValue = b[bIndex];
+			if (aValue < bValue) {
+				out[cOut++] = aValue;
+				aIndex++;
+			} else if (aValue > bValue) {
+				out[cOut++] = bValue;
+				bIndex++;
+			} else {
+				out[cOut++] = aValue;
+				aIndex++;
+				bIndex++;
+			}
+		}
+	}
+
+	// Rest
+	System.arraycopy(a, aIndex, out, cOut, aLength - aIndex);
+	cOut += aLength - aIndex;
+	System.arraycopy(b, bIndex, out, cOut, bLength - bIndex);
+	cOut += bLength - bIndex;
+	return cOut;
+}
+
+/**
+ * Union of many sorted int sets through a k-way merge with a min-heap
+ * @param arrays sorted values without duplicates
+ * @param lengths number of values to use in each array, null to use the whole arrays
+ * @param out the values in any of the arrays, sorted. Must not be any of the arrays, must be at
+ * least as long as all arrays together
+ * @return number of values written to out
+ */
+public static int unionSorted(int[][] arrays, int[] lengths, int[] out) {
+	int[] positions = new int[arrays.length];
+	int[] heap = new int[arrays.length];
+	int heapSize = 0;
+	for (int i = 0; i < arrays.length; ++i) {
+		if (length(arrays, lengths, i) > 0) {
+			heap[heapSize++] = i;
+		}
+	}
+	for (int i = heapSize / 2 - 1; i >= 0; --i) {
+		siftDown(arrays, positions, heap, heapSize, i);
+	}
+
+	int cOut = 0;
+	while (heapSize > 0) {
+		int top = heap[0];
+		int value = arrays[top][positions[top]];
+		if (cOut == 0 || out[cOut - 1] != value) {
+			out[cOut++] = value;
+		}
+
+		positions[top]++;
+		if (positions[top] == length(arrays, lengths, top)) {
+			heap[0] = heap[--heapSize];
+		}
+		siftDown(arrays, positions, heap, heapSize, 0);
+	}
+	return cOut;
+}
+
+/**
+ * Difference of two sorted int sets, i.e. all values in a that aren't in b
+ * @param a sorted values without duplicates
+ * @param b sorted values without duplicates
+ * @param out the values in a but not in b, sorted. Can be the same array as a
+ * @return number of values written to out
+ * @see #differenceSorted(int[], int, int[], int, int[])
+ */
+public static int differenceSorted(int[] a, int[] b, int[] out) {
+	return differenceSorted(a, a.length, b, b.length, out);
+}
+
+/**
+ * Difference of two sorted int sets, i.e. all values in a that aren't in b. Uses galloping search
+ * when one set is much larger than the other, otherwise a linear merge.
+ * @param a sorted values without duplicates
+ * @param aLength number of values to use in a
+ * @param b sorted values without duplicates
+ * @param bLength number of values to use in b
+ * @param out the values in a but not in b, sorted. Can be the same array as a, must be at least
+ * aLength long
+ * @return number of values written to out
+ */
+public static int differenceSorted(int[] a, int aLength, int[] b, int bLength, int[] out) {
+	int cOut = 0;
+	int aIndex = 0;
+	int bIndex = 0;
+
+	// Large b, search for each a
+	if (aLength > 0 && bLength / aLength >= GALLOP_RATIO) {
+		for (; aIndex < aLength; ++aIndex) {
+			int value = a[aIndex];
+			bIndex = gallop(b, bIndex, bLength, value);
+			if (bIndex >= bLength || b[bIndex] != value) {
+				out[cOut++] = value;
+			}
+		}
+		return cOut;
+	}
+	// Large a, copy everything between the values of b
+	else if (bLength > 0 && aLength / bLength >= GALLOP_RATIO) {
+		for (; bIndex < bLength && aIndex < aLength; ++bIndex) {
+			int value = b[bIndex];
+			int nextAIndex = gallop(a, aIndex, aLength, value);
+			System.arraycopy(a, aIndex, out, cOut, nextAIndex - aIndex);
+			cOut += nextAIndex - aIndex;
+			aIndex = nextAIndex;
+			if (aIndex < aLength && a[aIndex] == value) {
+				aIndex++;
+			}
+		}
+	} else {
+		while (aIndex < aLength && bIndex < bLength) {
+			int aValue = a[aIndex];
+			int bValue = b[bIndex];
+			if (aValue < bValue) {
+				out[cOut++] = aValue;
+				aIndex++;
+			} else if (aValue > bValue) {
+				bIndex++;
+			} else {
+				aIndex++;
+				bIndex++;
+			}
+		}
+	}
+
+	// Rest of a
+	System.arraycopy(a, aIndex, out, cOut, aLength - aIndex);
+	cOut += aLength - aIndex;
+	return cOut;
+}
+
+/**
+ * Exponential search followed by a binary search for the first value that is greater than or equal
+ * to the specified value
+ * @param array sorted array to search in
+ * @param from start searching from this index
+ * @param to stop searching at this index (exclusive)
+ * @param value the value to search for
+ * @return index of the first value &gt;= value, to if not found
+ */
+private static int gallop(int[] array, int from, int to, int value) {
+	if (from >= to || array[from] >= value) {
+		return from;
+	}
+
+	// array[low] < value
+	int low = from;
+	int high = from + 1;
+	int step = 1;
+	while (high < to && array[high] < value) {
+		low = high;
+		step <<= 1;
+		high = to - low > step ? low + step : to;
+	}
+
+	// Binary search in (low, high]
+	low++;
+	while (low < high) {
+		int middle = (low + high) >>> 1;
+		if (array[middle] < value) {
+			low = middle + 1;
+		} else {
+			high = middle;
+		}
+	}
+	return low;
+}
+
+/**
+ * Move a heap element down until the heap is valid again
+ * @param arrays arrays that are merged
+ * @param positions current position in each array
+ * @param heap array indices ordered by their current value
+ * @param heapSize number of elements in the heap
+ * @param index the heap index to move down
+ */
+private static void siftDown(int[][] arrays, int[] positions, int[] heap, int heapSize, int index) {
+	while (true) {
+		int smallest = index;
+		int left = 2 * index + 1;
+		int right = left + 1;
+		if (left < heapSize && heapValue(arrays, positions, heap[left]) < heapValue(arrays, positions, heap[smallest])) {
+			smallest = left;
+		}
+		if (right < heapSize && heapValue(arrays, positions, heap[right]) < heapValue(arrays, positions, heap[smallest])) {
+			smallest = right;
+		}
+		if (smallest == index) {
+			return;
+		}
+		int temp = heap[index];
+		heap[index] = heap[smallest];
+		heap[smallest] = temp;
+		index = smallest;
+	}
+}
+
+/**
+ * @param arrays arrays that are merged
+ * @param positions current position in each array
+ * @param arrayIndex index of the array
+ * @return current value of the array
+ */
+private static int heapValue(int[][] arrays, int[] positions, int arrayIndex) {
+	return arrays[arrayIndex][positions[arrayIndex]];
+}
+
+/**
+ * @param arrays the arrays
+ * @param lengths number of values to use in each array, null to use the whole arrays
+ * @param index index of the array
+ * @return number of values to use in the array
+ */
+private static int length(int[][] arrays, int[] lengths, int index) {
+	return lengths != null ? lengths[index] : arrays[index].length;
+}
+
+/**
+ * Intersection of two sorted long sets
+ * @param a sorted values without duplicates
+ * @param b sorted values without duplicates
+ * @param out the values in both a and b, sorted. Can be the same array as a or b
+ * @return number of values written to out
+ * @see #intersectSorted(long[], int, long[], int, long[])
+ */
+public static int intersectSorted(long[] a, long[] b, long[] out) {
+	return intersectSorted(a, a.length, b, b.length, out);
+}
+
+/**
+ * Intersection of two sorted long sets. Uses galloping search when one set is much larger than the
+ * other, otherwise a linear merge.
+ * @param a sorted values without duplicates
+ * @param aLength number of values to use in a
+ * @param b sorted values without duplicates
+ * @param bLength number of values to use in b
+ * @param out the values in both a and b, sorted. Can be the same array as a or b, must be at least
+ * min(aLength, bLength) long
+ * @return number of values written to out
+ */
+public static int intersectSorted(long[] a, int aLength, long[] b, int bLength, long[] out) {
+	// Make a the smaller one
+	if (aLength > bLength) {
+		long[] tempArray = a;
+		a = b;
+		b = tempArray;
+		int tempLength = aLength;
+		aLength = bLength;
+		bLength = tempLength;
+	}
+	if (aLength == 0) {
+		return 0;
+	}
+
+	int cOut = 0;
+	if (bLength / aLength >= GALLOP_RATIO) {
+		int bIndex = 0;
+		for (int aIndex = 0; aIndex < aLength && bIndex < bLength; ++aIndex) {
+			long value = a[aIndex];
+			bIndex = gallop(b, bIndex, bLength, value);
+			if (bIndex < bLength && b[bIndex] == value) {
+				out[cOut++] = value;
+				bIndex++;
+			}
+		}
+	} else {
+		int aIndex = 0;
+		int bIndex = 0;
+		while (aIndex < aLength && bIndex < bLength) {
+			long aValue = a[aIndex];
+			long bValue = b[bIndex];
+			if (aValue < bValue) {
+				aIndex++;
+			} else if (aValue > bValue) {
+				bIndex++;
+			} else {
+				out[cOut++] = aValue;
+				aIndex++;
+				bIndex++;
+			}
+		}
+	}
+	return cOut;
+}
+
+/**
+ * Intersection of many sorted long sets. Starts with the smallest set and intersects it with the
+ * others one at a time.
+ * @param arrays sorted values without duplicates
+ * @param lengths number of values to use in each array, null to use the whole arrays
+ * @param out the values in all arrays, sorted. Must be at least as long as the shortest array
+ * @return number of values written to out
+ */
+public static int intersectSorted(long[][] arrays, int[] lengths, long[] out) {
+	if (arrays.length == 0) {
+		return 0;
+	}
+
+	int smallest = 0;
+	for (int i = 1; i < arrays.length; ++i) {
+		if (length(arrays, lengths, i) < length(arrays, lengths, smallest)) {
+			smallest = i;
+		}
+	}
+
+	int cOut = length(arrays, lengths, smallest);
+	System.arraycopy(arrays[smallest], 0, out, 0, cOut);
+	for (int i = 0; i < arrays.length && cOut > 0; ++i) {
+		if (i != smallest) {
+			cOut = intersectSorted(out, cOut, arrays[i], length(arrays, lengths, i), out);
+		}
+	}
+	return cOut;
+}
+
+/**
+ * Union of two sorted long sets
+ * @param a sorted values without duplicates
+ * @param b sorted values without duplicates
+ * @param out the values in a or b, sorted. Must not be a or b
+ * @return number of values written to out
+ * @see #unionSorted(long[], int, long[], int, long[])
+ */
+public static int unionSorted(long[] a, long[] b, long[] out) {
+	return unionSorted(a, a.length, b, b.length, out);
+}
+
+/**
+ * Union of two sorted long sets. Uses galloping search and bulk copies when one set is much larger
+ * than the other, otherwise a linear merge.
+ * @param a sorted values without duplicates
+ * @param aLength number of values to use in a
+ * @param b sorted values without duplicates
+ * @param bLength number of values to use in b
+ * @param out the values in a or b, sorted. Must not be a or b, must be at least aLength + bLength
+ * long
+ * @return number of values written to out
+ */
+public static int unionSorted(long[] a, int aLength, long[] b, int bLength, long[] out) {
+	// Make a the smaller one
+	if (aLength > bLength) {
+		long[] tempArray = a;
+		a = b;
+		b = tempArray;
+		int tempLength = aLength;
+		aLength = bLength;
+		bLength = tempLength;
+	}
+
+	int cOut = 0;
+	int aIndex = 0;
+	int bIndex = 0;
+	if (aLength > 0 && bLength / aLength >= GALLOP_RATIO) {
+		for (; aIndex < aLength; ++aIndex) {
+			long value = a[aIndex];
+			int nextBIndex = gallop(b, bIndex, bLength, value);
+			System.arraycopy(b, bIndex, out, cOut, nextBIndex - bIndex);
+			cOut += nextBIndex - bIndex;
+			bIndex = nextBIndex;
+
+			out[cOut++] = value;
+			if (bIndex < bLength && b[bIndex] == value) {
+				bIndex++;
+			}
+		}
+	} else {
+		while (aIndex < aLength && bIndex < bLength) {
+			long aValue = a[aIndex];
+			long bValue = b[bIndex];
+			if (aValue < bValue) {
+				out[cOut++] = aValue;
+				aIndex++;
+			} else if (aValue > bValue) {
+				out[cOut++] = bValue;
+				bIndex++;
+			} else {
+				out[cOut++] = aValue;
+				aIndex++;
+				bIndex++;
+			}
+		}
+	}
+
+	// Rest
+	System.arraycopy(a, aIndex, out, cOut, aLength - aIndex);
+	cOut += aLength - aIndex;
+	System.arraycopy(b, bIndex, out, cOut, bLength - bIndex);
+	cOut += bLength - bIndex;
+	return cOut;
+}
+
+/**
+ * Union of many sorted long sets through a k-way merge with a min-heap
+ * @param arrays sorted values without duplicates
+ * @param lengths number of values to use in each array, null to use the whole arrays
+ * @param out the values in any of the arrays, sorted. Must not be any of the arrays, must be at
+ * least as long as all arrays together
+ * @return number of values written to out
+ */
+public static int unionSorted(long[][] arrays, int[] lengths, long[] out) {
+	int[] positions = new int[arrays.length];
+	int[] heap = new int[arrays.length];
+	int heapSize = 0;
+	for (int i = 0; i < arrays.length; ++i) {
+		if (length(arrays, lengths, i) > 0) {
+			heap[heapSize++] = i;
+		}
+	}
+	for (int i = heapSize / 2 - 1; i >= 0; --i) {
+		siftDown(arrays, positions, heap, heapSize, i);
+	}
+
+	int cOut = 0;
+	while (heapSize > 0) {
+		int top = heap[0];
+		long value = arrays[top][positions[top]];
+		if (cOut == 0 || out[cOut - 1] != value) {
+			out[cOut++] = value;
+		}
+
+		positions[top]++;
+		if (positions[top] == length(arrays, lengths, top)) {
+			heap[0] = heap[--heapSize];
+		}
+		siftDown(arrays, positions, heap, heapSize, 0);
+	}
+	return cOut;
+}
+
+/**
+ * Difference of two sorted long sets, i.e. all values in a that aren't in b
+ * @param a sorted values without duplicates
+ * @param b sorted values without duplicates
+ * @param out the values in a but not in b, sorted. Can be the same array as a
+ * @return number of values written to out
+ * @see #differenceSorted(long[], int, long[], int, long[])
+ */
+public static int differenceSorted(long[] a, long[] b, long[] out) {
+	return differenceSorted(a, a.length, b, b.length, out);
+}
+
+/**
+ * Difference of two sorted long sets, i.e. all values in a that aren't in b. Uses galloping search
+ * when one set is much larger than the other, otherwise a linear merge.
+ * @param a sorted values without duplicates
+ * @param aLength number of values to use in a
+ * @param b sorted values without duplicates
+ * @param bLength number of values to use in b
+ * @param out the values in a but not in b, sorted. Can be the same array as a, must be at least
+ * aLength long
+ * @return number of values written to out
+ */
+public static int differenceSorted(long[] a, int aLength, long[] b, int bLength, long[] out) {
+	int cOut = 0;
+	int aIndex = 0;
+	int bIndex = 0;
+
+	// Large b, search for each a
+	if (aLength > 0 && bLength / aLength >= GALLOP_RATIO) {
+		for (; aIndex < aLength; ++aIndex) {
+			long value = a[aIndex];
+			bIndex = gallop(b, bIndex, bLength, value);
+			if (bIndex >= bLength || b[bIndex] != value) {
+				out[cOut++] = value;
+			}
+		}
+		return cOut;
+	}
+	// Large a, copy everything between the values of b
+	else if (bLength > 0 && aLength / bLength >= GALLOP_RATIO) {
+		for (; bIndex < bLength && aIndex < aLength; ++bIndex) {
+			long value = b[bIndex];
+			int nextAIndex = gallop(a, aIndex, aLength, value);
+			System.arraycopy(a, aIndex, out, cOut, nextAIndex - aIndex);
+			cOut += nextAIndex - aIndex;
+			aIndex = nextAIndex;
+			if (aIndex < aLength && a[aIndex] == value) {
+				aIndex++;
+			}
+		}
+	} else {
+		while (aIndex < aLength && bIndex < bLength) {
+			long aValue = a[aIndex];
+			long bValue = b[bIndex];
+			if (aValue < bValue) {
+				out[cOut++] = aValue;
+				aIndex++;
+			} else if (aValue > bValue) {
+				bIndex++;
+			} else {
+				aIndex++;
+				bIndex++;
+			}
+		}
+	}
+
+	// Rest of a
+	System.arraycopy(a, aIndex, out, cOut, aLength - aIndex);
+	cOut += aLength - aIndex;
+	return cOut;
+}
+
+/**
+ * Exponential search followed by a binary search for the first value that is greater than or equal
+ * to the specified value
+ * @param array sorted array to search in
+ * @param from start searching from this index
+ * @param to stop searching at this index (exclusive)
+ * @param value the value to search for
+ * @return index of the first value &gt;= value, to if not found
+ */
+private static int gallop(long[] array, int from, int to, long value) {
+	if (from >= to || array[from] >= value) {
+		return from;
+	}
+
+	// array[low] < value
+	int low = from;
+	int high = from + 1;
+	int step = 1;
+	while (high < to && array[high] < value) {
+		low = high;
+		step <<= 1;
+		high = to - low > step ? low + step : to;
+	}
+
+	// Binary search in (low, high]
+	low++;
+	while (low < high) {
+		int middle = (low + high) >>> 1;
+		if (array[middle] < value) {
+			low = middle + 1;
+		} else {
+			high = middle;
+		}
+	}
+	return low;
+}
+
+/**
+ * Move a heap element down until the heap is valid again
+ * @param arrays arrays that are merged
+ * @param positions current position in each array
+ * @param heap array indices ordered by their current value
+ * @param heapSize number of elements in the heap
+ * @param index the heap index to move down
+ */
+private static void siftDown(long[][] arrays, int[] positions, int[] heap, int heapSize, int index) {
+	while (true) {
+		int smallest = index;
+		int left = 2 * index + 1;
+		int right = left + 1;
+		if (left < heapSize && heapValue(arrays, positions, heap[left]) < heapValue(arrays, positions, heap[smallest])) {
+			smallest = left;
+		}
+		if (right < heapSize && heapValue(arrays, positions, heap[right]) < heapValue(arrays, positions, heap[smallest])) {
+			smallest = right;
+		}
+		if (smallest == index) {
+			return;
+		}
+		int temp = heap[index];
+		heap[index] = heap[smallest];
+		heap[smallest] = temp;
+		index = smallest;
+	}
+}
+
+/**
+ * @param arrays arrays that are merged
+ * @param positions current position in each array
+ * @param arrayIndex index of the array
+ * @return current value of the array
+ */
+private static long heapValue(long[][] arrays, int[] positions, int arrayIndex) {
+	return arrays[arrayIndex][positions[arrayIndex]];
+}
+
+/**
+ * @param arrays the arrays
+ * @param lengths number of values to use in each array, null to use the whole arrays
+ * @param index index of the array
+ * @return number of values to use in the array
+ */
+private static int length(long[][] arrays, int[] lengths, int index) {
+	return lengths != null ? lengths[index] : arrays[index].length;
+}
+
+/**
+ * Fill a collection with new elements. The constructor is only looked up once per class, see {@link
+ * Factories}.
  * @param <ElementType> type to create
  * @param array the array to fill
  * @param clazz create these type of elements
  * @return same array
+ * @throws IllegalArgumentException if the class doesn't have an accessible public no-argument constructor
  */
 public static <ElementType> ElementType[] fillNew(ElementType[] array, Class<ElementType> clazz) {
-	try {
-		Constructor<ElementType> constructor = clazz.getConstructor();
-		
-		for (int i = 0; i < array.length; ++i) {
-			array[i] = constructor.newInstance();
-		}
-	} catch (NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException
-			| InvocationTargetException e) {
-		e.printStackTrace();
+	return fillNew(array, Factories.getFactory(clazz));
+}
+
+/**
+ * Fill a collection with elements from a factory, e.g. an {@link ObjectPool}
+ * @param <ElementType> type to create
+ * @param array the array to fill
+ * @param factory creates the elements
+ * @return same array
+ */
+public static <ElementType> ElementType[] fillNew(ElementType[] array, Supplier<? extends ElementType> factory) {
+	for (int i = 0; i < array.length; ++i) {
+		array[i] = factory.get();
 	}
 	
 	return array;
@@ -1,22 +1,107 @@
 package io.blushine.utils;
 
 import com.squareup.otto.Bus;
+import com.squareup.otto.DeadEvent;
 import com.squareup.otto.ThreadEnforcer;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
 /**
  * Default Otto event bus for an application.
+ * <p>
+ * Subscribers are dispatched to by the bus itself instead of by Otto. The annotated methods of each
+ * class are found and bound to generated invokers once (see {@link EventMethods}), and the handlers
+ * for each event class, including the handlers of its super classes, are cached in an array that is
+ * replaced whenever a subscriber is registered or unregistered. Posting an event is then a map
+ * lookup and a loop of near direct calls.
+ * <p>
+ * An asynchronous bus (see {@link #setAsyncExecutor(Executor)} and {@link #newAsyncBus(Executor)})
+ * can be posted to from any thread. Posting only queues the event; the events are delivered on the
+ * executor. Each subscriber receives its events one at a time in the order they were posted, while
+ * different subscribers receive them in parallel. Exceptions thrown by subscribers are sent to the
+ * {@link ErrorListener}. Event types can be coalesced (see {@link #setCoalescing(Class, Function)})
+ * so that a queued event is replaced by a newer one with the same key, and {@link SubscribeBatch}
+ * methods receive their events in batches. Dispatch metrics can be enabled with {@link
+ * #setMetricsEnabled(boolean)}. Otherwise it follows Otto's rules for subscribers, producers, event
+ * hierarchies and {@link DeadEvent}s.
  * @see Bus
  */
 public class EventBus extends Bus {
 private static EventBus mInstance = null;
 private static long mMainThreadId = 1;
 private static ThreadEnforcer mThreadEnforcer = ThreadEnforcer.MAIN;
+private static Executor mAsyncExecutor = null;
+/** Classes of an event and all its super classes */
+private static final ClassValue<Class<?>[]> EVENT_TYPES = new ClassValue<Class<?>[]>() {
+	@Override
+	protected Class<?>[] computeValue(Class<?> type) {
+		List<Class<?>> types = new ArrayList<>();
+		for (Class<?> superType = type; superType != null; superType = superType.getSuperclass()) {
+			types.add(superType);
+		}
+		return types.toArray(new Class<?>[types.size()]);
+	}
+};
+/** Enforces which threads may use a synchronous bus */
+private final ThreadEnforcer mEnforcer;
+/** Executor for asynchronous delivery, null if events are delivered synchronously */
+private final Executor mExecutor;
+/** Registered subscribers by identity */
+private final Map<Object, EventSubscriber> mSubscribers = new IdentityHashMap<>();
+/** Handlers for exactly this event class */
+private final Map<Class<?>, EventHandler[]> mHandlersByType = new HashMap<>();
+private final Map<Class<?>, EventProducer> mProducersByType = new HashMap<>();
+/** Coalescing key functions by event class */
+private final Map<Class<?>, Function<Object, ?>> mCoalesceKeys = new HashMap<>();
+/** How to dispatch each event class, cleared when the handlers or coalescing change */
+private final ConcurrentMap<Class<?>, Dispatch> mDispatchCache = new ConcurrentHashMap<>();
+/** Events posted while a synchronous bus is dispatching on the thread */
+private final ThreadLocal<SyncDispatch> mSyncDispatch = new ThreadLocal<SyncDispatch>() {
+	@Override
+	protected SyncDispatch initialValue() {
+		return new SyncDispatch();
+	}
+};
+/** Dispatch metrics, null if disabled */
+private volatile EventBusMetrics mMetrics = null;
+private volatile ErrorListener mErrorListener = new ErrorListener() {
+	@Override
+	public void onError(Throwable error, Object event, Object subscriber) {
+		error.printStackTrace();
+	}
+};
 
 /**
  * Enforces singleton pattern
  */
 protected EventBus(ThreadEnforcer threadEnforcer) {
 	super(threadEnforcer);
+	mEnforcer = threadEnforcer;
+	mExecutor = null;
+}
+
+/**
+ * Create an asynchronous bus
+ * @param executor executor to deliver the events on
+ */
+protected EventBus(Executor executor) {
+	super(ThreadEnforcer.ANY);
+	if (executor == null) {
+		throw new IllegalArgumentException("executor is null");
+	}
+	mEnforcer = ThreadEnforcer.ANY;
+	mExecutor = executor;
 }
 
 /**
@@ -41,12 +126,39 @@ public static void setThreadEnforcer(ThreadEnforcer threadEnforcer) {
 	mThreadEnforcer = threadEnforcer;
 }
 
+/**
+ * Make the default instance asynchronous. Must be set before the first call to {@link
+ * #getInstance()}. Any executor works, e.g. a fixed thread pool to use all cores or a virtual
+ * thread executor on newer JDKs.
+ * @param executor executor to deliver the events on, null for synchronous delivery
+ */
+public static void setAsyncExecutor(Executor executor) {
+	if (mInstance != null) {
+		throw new IllegalStateException("Event bus already initialized");
+	}
+	mAsyncExecutor = executor;
+}
+
+/**
+ * Create a new asynchronous bus, separate from the default instance
+ * @param executor executor to deliver the events on
+ * @return new asynchronous bus
+ */
+public static EventBus newAsyncBus(Executor executor) {
+	return new EventBus(executor);
+}
+
 /**
  * Get singleton instance
  * @return get instance
  */
 public static EventBus getInstance() {
 	if (mInstance == null) {
+		if (mAsyncExecutor != null) {
+			mInstance = new EventBus(mAsyncExecutor);
+			return mInstance;
+		}
+
 		ThreadEnforcer threadEnforcer = mThreadEnforcer;
 
 		// Check if this is an Android application
@@ -62,6 +174,409 @@ public static EventBus getInstance() {
 	return mInstance;
 }
 
+/**
+ * @return true if events are delivered asynchronously
+ */
+public boolean isAsync() {
+	return mExecutor != null;
+}
+
+/**
+ * Coalesce events of the class (and its sub classes) on an asynchronous bus, a queued event is
+ * replaced by a newer one until it has been delivered. Useful for events where only the latest
+ * state matters.
+ * @param eventType class of the events to coalesce
+ */
+public void setCoalescing(final Class<?> eventType) {
+	setCoalescing(eventType, new Function<Object, Object>() {
+		@Override
+		public Object apply(Object event) {
+			return eventType;
+		}
+	});
+}
+
+/**
+ * Coalesce events of the class (and its sub classes) by key on an asynchronous bus, a queued event
+ * is replaced by a newer one with an equal key until it has been delivered.
+ * @param <Event> type of the events
+ * @param eventType class of the events to coalesce
+ * @param keyFunction returns the key of an event, events with a null key are never coalesced
+ */
+@SuppressWarnings("unchecked")
+public synchronized <Event> void setCoalescing(Class<Event> eventType, Function<? super Event, ?> keyFunction) {
+	if (eventType == null) {
+		throw new IllegalArgumentException("eventType is null");
+	}
+	if (keyFunction == null) {
+		throw new IllegalArgumentException("keyFunction is null");
+	}
+	mCoalesceKeys.put(eventType, (Function<Object, ?>) keyFunction);
+	mDispatchCache.clear();
+}
+
+/**
+ * Stop coalescing events of the class
+ * @param eventType class of the events to stop coalescing
+ */
+public synchronized void removeCoalescing(Class<?> eventType) {
+	mCoalesceKeys.remove(eventType);
+	mDispatchCache.clear();
+}
+
+/**
+ * Set the listener for exceptions thrown by subscribers of an asynchronous bus. The default
+ * listener prints the stack trace. Exceptions on a synchronous bus are thrown from {@link
+ * #post(Object)}.
+ * @param errorListener listener for exceptions thrown by subscribers
+ */
+public void setErrorListener(ErrorListener errorListener) {
+	if (errorListener == null) {
+		throw new IllegalArgumentException("errorListener is null");
+	}
+	mErrorListener = errorListener;
+}
+
+/**
+ * Enable or disable dispatch metrics. Disabling drops the recorded metrics.
+ * @param enabled true to record metrics
+ * @see #getMetrics()
+ */
+public void setMetricsEnabled(boolean enabled) {
+	if (enabled) {
+		if (mMetrics == null) {
+			mMetrics = new EventBusMetrics();
+		}
+	} else {
+		mMetrics = null;
+	}
+}
+
+/**
+ * @return dispatch metrics, null if disabled
+ */
+public EventBusMetrics getMetrics() {
+	return mMetrics;
+}
+
+/**
+ * @return number of events that have been posted but not yet delivered, 0 for a synchronous bus.
+ * Events waiting to be batched are not included.
+ */
+public long getQueueDepth() {
+	if (mExecutor == null) {
+		return 0;
+	}
+	long depth = 0;
+	synchronized (this) {
+		for (EventSubscriber subscriber : mSubscribers.values()) {
+			depth += subscriber.getQueuedCount();
+		}
+	}
+	return depth;
+}
+
+/**
+ * @return listener for exceptions thrown by subscribers
+ */
+ErrorListener getErrorListener() {
+	return mErrorListener;
+}
+
+@Override
+public void register(Object object) {
+	if (object == null) {
+		throw new NullPointerException("Object to register must not be null.");
+	}
+	mEnforcer.enforce(this);
+
+	// Produced events are delivered outside the lock
+	List<Object> produced = new ArrayList<>();
+	synchronized (this) {
+		if (mSubscribers.containsKey(object)) {
+			return;
+		}
+		EventSubscriber subscriber = new EventSubscriber(this, mExecutor, object);
+		for (EventProducer producer : subscriber.getProducers()) {
+			EventProducer existing = mProducersByType.get(producer.getEventType());
+			if (existing != null) {
+				throw new IllegalArgumentException("Producer method for type " + producer.getEventType() + " found on type " + object.getClass() + ", but already registered by type " + existing.getTarget().getClass() + ".");
+			}
+		}
+
+		mSubscribers.put(object, subscriber);
+		for (EventProducer producer : subscriber.getProducers()) {
+			mProducersByType.put(producer.getEventType(), producer);
+		}
+		for (EventHandler handler : subscriber.getHandlers()) {
+			EventHandler[] handlers = mHandlersByType.get(handler.getEventType());
+			if (handlers == null) {
+				handlers = new EventHandler[] {handler};
+			} else {
+				handlers = Arrays.copyOf(handlers, handlers.length + 1);
+				handlers[handlers.length - 1] = handler;
+			}
+			mHandlersByType.put(handler.getEventType(), handlers);
+		}
+		mDispatchCache.clear();
+
+		// Existing subscribers get the events of the new producers, the new subscriber gets the
+		// events of all producers (including its own)
+		for (EventProducer producer : mProducersByType.values()) {
+			EventHandler[] handlers = mHandlersByType.get(producer.getEventType());
+			if (handlers == null) {
+				continue;
+			}
+			boolean newProducer = producer.getTarget() == object;
+			for (EventHandler handler : handlers) {
+				if (newProducer || handler.getSubscriber() == subscriber) {
+					produced.add(producer);
+					produced.add(handler);
+				}
+			}
+		}
+	}
+
+	for (int i = 0; i < produced.size(); i += 2) {
+		EventProducer producer = (EventProducer) produced.get(i);
+		EventHandler handler = (EventHandler) produced.get(i + 1);
+		Object event = producer.produce();
+		if (event != null) {
+			deliverProduced(event, handler);
+		}
+	}
+}
+
+/**
+ * Deliver a produced event to a newly registered handler, or deliver the event of a newly
+ * registered producer to a handler
+ * @param event the produced event
+ * @param handler the handler to deliver to
+ */
+void deliverProduced(Object event, EventHandler handler) {
+	if (mExecutor != null) {
+		handler.getSubscriber().enqueue(handler, event, null);
+	} else if (handler.getSubscriber().isValid()) {
+		dispatch(event, handler);
+	}
+}
+
+@Override
+public void unregister(Object object) {
+	if (object == null) {
+		throw new NullPointerException("Object to unregister must not be null.");
+	}
+	mEnforcer.enforce(this);
+
+	synchronized (this) {
+		EventSubscriber subscriber = mSubscribers.remove(object);
+		if (subscriber == null) {
+			throw new IllegalArgumentException("Missing event handler for an annotated method. Is " + object.getClass() + " registered?");
+		}
+		subscriber.invalidate();
+		for (EventProducer producer : subscriber.getProducers()) {
+			mProducersByType.remove(producer.getEventType());
+		}
+		for (EventHandler handler : subscriber.getHandlers()) {
+			EventHandler[] handlers = mHandlersByType.get(handler.getEventType());
+			List<EventHandler> remaining = new ArrayList<>(Arrays.asList(handlers));
+			remaining.remove(handler);
+			if (remaining.isEmpty()) {
+				mHandlersByType.remove(handler.getEventType());
+			} else {
+				mHandlersByType.put(handler.getEventType(), remaining.toArray(new EventHandler[remaining.size()]));
+			}
+		}
+		mDispatchCache.clear();
+	}
+}
+
+@Override
+public void post(Object event) {
+	if (event == null) {
+		throw new NullPointerException("Event to post must not be null.");
+	}
+	mEnforcer.enforce(this);
+	recordPost(event);
+
+	Dispatch dispatch = getDispatch(event.getClass());
+	EventHandler[] handlers = dispatch.mHandlers;
+	if (handlers.length == 0) {
+		if (!(event instanceof DeadEvent)) {
+			post(new DeadEvent(this, event));
+		}
+	} else if (mExecutor != null) {
+		Object key = dispatch.mCoalesceKey != null ? dispatch.mCoalesceKey.apply(event) : null;
+		for (EventHandler handler : handlers) {
+			handler.getSubscriber().enqueue(handler, event, key);
+		}
+	} else {
+		dispatchSync(event, handlers);
+	}
+}
+
+/**
+ * Get the handlers for an event class and all its super classes
+ * @param eventType class of the event
+ * @return handlers of the event, don't modify
+ */
+EventHandler[] getHandlers(Class<?> eventType) {
+	return getDispatch(eventType).mHandlers;
+}
+
+/**
+ * Get how to dispatch an event class
+ * @param eventType class of the event
+ * @return handlers and coalescing key function for the event class
+ */
+private Dispatch getDispatch(Class<?> eventType) {
+	Dispatch dispatch = mDispatchCache.get(eventType);
+	if (dispatch != null) {
+		return dispatch;
+	}
+
+	// Computed under the lock so that a cleared cache never gets outdated handlers
+	synchronized (this) {
+		List<EventHandler> handlers = new ArrayList<>();
+		Function<Object, ?> coalesceKey = null;
+		for (Class<?> superType : EVENT_TYPES.get(eventType)) {
+			EventHandler[] typeHandlers = mHandlersByType.get(superType);
+			if (typeHandlers != null) {
+				handlers.addAll(Arrays.asList(typeHandlers));
+			}
+			if (coalesceKey == null) {
+				coalesceKey = mCoalesceKeys.get(superType);
+			}
+		}
+		dispatch = new Dispatch(handlers.toArray(new EventHandler[handlers.size()]), coalesceKey);
+		mDispatchCache.put(eventType, dispatch);
+		return dispatch;
+	}
+}
+
+/**
+ * Dispatch an event on the current thread. Events posted by the handlers are queued and dispatched
+ * after this event has been dispatched to all handlers, in the order they were posted.
+ * @param event the event to dispatch
+ * @param handlers handlers of the event
+ */
+private void dispatchSync(Object event, EventHandler[] handlers) {
+	SyncDispatch syncDispatch = mSyncDispatch.get();
+	if (syncDispatch.mDispatching) {
+		syncDispatch.mQueue.add(event);
+		syncDispatch.mQueue.add(handlers);
+		return;
+	}
+
+	syncDispatch.mDispatching = true;
+	try {
+		dispatchAll(event, handlers);
+		Object queuedEvent;
+		while ((queuedEvent = syncDispatch.mQueue.poll()) != null) {
+			dispatchAll(queuedEvent, (EventHandler[]) syncDispatch.mQueue.poll());
+		}
+	} finally {
+		syncDispatch.mDispatching = false;
+	}
+}
+
+/**
+ * Dispatch an event to all handlers that are still registered
+ * @param event the event to dispatch
+ * @param handlers handlers of the event
+ */
+private void dispatchAll(Object event, EventHandler[] handlers) {
+	for (EventHandler handler : handlers) {
+		if (handler.getSubscriber().isValid()) {
+			dispatch(event, handler);
+		}
+	}
+}
+
+/**
+ * Dispatch an event to a handler on the current thread. Batch handlers get a list with only the
+ * event.
+ * @param event the event to dispatch
+ * @param handler the handler to dispatch to
+ * @throws RuntimeException if the handler threw an exception
+ */
+private void dispatch(Object event, EventHandler handler) {
+	try {
+		invoke(handler, handler.isBatch() ? Arrays.asList(event) : event);
+	} catch (Throwable e) {
+		throw new RuntimeException("Could not dispatch event: " + event.getClass() + " to handler " + handler + ": " + e.getMessage(), e);
+	}
+}
+
+/**
+ * Listens to exceptions thrown by subscribers of an asynchronous bus
+ */
+public interface ErrorListener {
+	/**
+	 * Called when a subscriber threw an exception
+	 * @param error the exception
+	 * @param event the event that was delivered
+	 * @param subscriber the subscriber that threw the exception, null if the event couldn't be posted
+	 */
+	void onError(Throwable error, Object event, Object subscriber);
+}
+
+/**
+ * Count a posted event if metrics are enabled
+ * @param event the posted event
+ */
+void recordPost(Object event) {
+	EventBusMetrics metrics = mMetrics;
+	if (metrics != null) {
+		metrics.recordPost(event.getClass());
+	}
+}
+
+/**
+ * Call a handler and measure it if metrics are enabled
+ * @param handler the handler to call
+ * @param argument the event, or a list of events for a batch handler
+ * @throws Throwable anything the handler throws
+ */
+void invoke(EventHandler handler, Object argument) throws Throwable {
+	EventBusMetrics metrics = mMetrics;
+	if (metrics == null) {
+		handler.handle(argument);
+		return;
+	}
+
+	long start = System.nanoTime();
+	try {
+		handler.handle(argument);
+	} finally {
+		metrics.recordInvocation(handler, argument, System.nanoTime() - start);
+	}
+}
+
+/**
+ * How to dispatch an event class
+ */
+private static class Dispatch {
+	/** Handlers for the event class and its super classes */
+	private final EventHandler[] mHandlers;
+	/** Coalescing key function, null if not coalesced */
+	private final Function<Object, ?> mCoalesceKey;
+
+	private Dispatch(EventHandler[] handlers, Function<Object, ?> coalesceKey) {
+		mHandlers = handlers;
+		mCoalesceKey = coalesceKey;
+	}
+}
+
+/**
+ * Events posted while dispatching on a thread of a synchronous bus
+ */
+private static class SyncDispatch {
+	/** Alternating events and their handlers */
+	private final Queue<Object> mQueue = new ArrayDeque<>();
+	private boolean mDispatching = false;
+}
+
 protected static class JavaMainThreadEnforcer implements ThreadEnforcer {
 	@Override
 	public void enforce(Bus bus) {
@@ -0,0 +1,132 @@
+package io.blushine.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dispatch metrics of an {@link EventBus}: how many events of each type were posted and how long
+ * each subscriber method took to handle them. Recording costs two {@link System#nanoTime()} calls
+ * per handler invocation and a few uncontended atomic increments, so it can be left on in
+ * production. Subscriber methods are measured per method, i.e. all registered instances of a class
+ * share the histogram of the method.
+ * @see EventBus#setMetricsEnabled(boolean)
+ */
+public class EventBusMetrics {
+private final ConcurrentMap<Class<?>, LongAdder> mPostCounts = new ConcurrentHashMap<>();
+private final ConcurrentMap<EventMethods.HandlerMethod, LatencyHistogram> mLatencies = new ConcurrentHashMap<>();
+private volatile long mSlowThresholdNanos = Long.MAX_VALUE;
+private volatile SlowHandlerListener mSlowHandlerListener = null;
+
+EventBusMetrics() {
+}
+
+/**
+ * Call a listener when a subscriber method takes longer than the threshold. The listener is
+ * called on the thread that delivered the event, after the method has returned.
+ * @param threshold minimum duration to report
+ * @param unit unit of threshold
+ * @param listener listener for slow methods, null to stop reporting
+ */
+public void setSlowHandlerListener(long threshold, TimeUnit unit, SlowHandlerListener listener) {
+	mSlowThresholdNanos = listener != null ? unit.toNanos(threshold) : Long.MAX_VALUE;
+	mSlowHandlerListener = listener;
+}
+
+/**
+ * @param eventType class of the events
+ * @return number of posted events of exactly this class
+ */
+public long getPostCount(Class<?> eventType) {
+	LongAdder count = mPostCounts.get(eventType);
+	return count != null ? count.sum() : 0;
+}
+
+/**
+ * @return number of posted events by class
+ */
+public Map<Class<?>, Long> getPostCounts() {
+	Map<Class<?>, Long> postCounts = new HashMap<>();
+	for (Map.Entry<Class<?>, LongAdder> entry : mPostCounts.entrySet()) {
+		postCounts.put(entry.getKey(), entry.getValue().sum());
+	}
+	return postCounts;
+}
+
+/**
+ * @return latency histogram in nanoseconds of each subscriber method that has been called, by
+ * method name ("package.Class.method(EventClass)")
+ */
+public Map<String, LatencyHistogram> getHandlerLatencies() {
+	Map<String, LatencyHistogram> latencies = new HashMap<>();
+	for (Map.Entry<EventMethods.HandlerMethod, LatencyHistogram> entry : mLatencies.entrySet()) {
+		latencies.put(entry.getKey().getName(), entry.getValue());
+	}
+	return latencies;
+}
+
+/**
+ * Reset all counts and histograms
+ */
+public void reset() {
+	for (LongAdder count : mPostCounts.values()) {
+		count.reset();
+	}
+	for (LatencyHistogram histogram : mLatencies.values()) {
+		histogram.reset();
+	}
+}
+
+/**
+ * Count a posted event
+ * @param eventType class of the event
+ */
+void recordPost(Class<?> eventType) {
+	LongAdder count = mPostCounts.get(eventType);
+	if (count == null) {
+		mPostCounts.putIfAbsent(eventType, new LongAdder());
+		count = mPostCounts.get(eventType);
+	}
+	count.increment();
+}
+
+/**
+ * Record how long a handler took and report it if it was slow
+ * @param handler the handler that was called
+ * @param event the event that was delivered
+ * @param durationNanos how long the handler took
+ */
+void recordInvocation(EventHandler handler, Object event, long durationNanos) {
+	EventMethods.HandlerMethod method = handler.getMethod();
+	LatencyHistogram histogram = mLatencies.get(method);
+	if (histogram == null) {
+		mLatencies.putIfAbsent(method, new LatencyHistogram());
+		histogram = mLatencies.get(method);
+	}
+	histogram.record(durationNanos);
+
+	if (durationNanos >= mSlowThresholdNanos) {
+		SlowHandlerListener listener = mSlowHandlerListener;
+		if (listener != null) {
+			listener.onSlowHandler(handler.getSubscriber().getTarget(), method.getName(), event, durationNanos);
+		}
+	}
+}
+
+/**
+ * Listens to subscriber methods that took longer than the threshold
+ */
+public interface SlowHandlerListener {
+	/**
+	 * Called after a slow subscriber method has returned
+	 * @param subscriber the subscriber
+	 * @param method name of the method ("package.Class.method(EventClass)")
+	 * @param event the event that was delivered, a list for batch methods
+	 * @param durationNanos how long the method took
+	 */
+	void onSlowHandler(Object subscriber, String method, Object event, long durationNanos);
+}
+}
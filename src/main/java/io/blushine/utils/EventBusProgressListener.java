@@ -0,0 +1,51 @@
+package io.blushine.utils;
+
+/**
+ * Posts the progress as {@link ProgressEvent}s with an exponentially smoothed rate to the {@link
+ * EventBus}. Use one listener per progress, the rate is measured from when the listener was
+ * created.
+ */
+public class EventBusProgressListener implements ProgressListener {
+private static final EventBus mEventBus = EventBus.getInstance();
+private final ProgressRate mRate = new ProgressRate();
+/** Event that is reused for every update, null to create a new event every time */
+private final MutableProgressEvent mEvent;
+private final String mMessage;
+
+/**
+ * Create a listener that posts a new event for every update
+ */
+public EventBusProgressListener() {
+	this(false, null);
+}
+
+/**
+ * Create a listener
+ * @param reuseEvent true to post the same {@link MutableProgressEvent} for every update, false to
+ * post a new event every time
+ */
+public EventBusProgressListener(boolean reuseEvent) {
+	this(reuseEvent, null);
+}
+
+/**
+ * Create a listener
+ * @param reuseEvent true to post the same {@link MutableProgressEvent} for every update, false to
+ * post a new event every time
+ * @param message an optional message for the events
+ */
+public EventBusProgressListener(boolean reuseEvent, String message) {
+	mEvent = reuseEvent ? new MutableProgressEvent() : null;
+	mMessage = message;
+}
+
+@Override
+public void onProgress(long complete, long total) {
+	double rate = mRate.update(complete, System.nanoTime());
+	if (mEvent != null) {
+		mEventBus.post(mEvent.update(complete, total, mMessage, rate));
+	} else {
+		mEventBus.post(new ProgressEvent(complete, total, mMessage, rate));
+	}
+}
+}
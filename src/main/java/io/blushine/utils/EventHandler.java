@@ -0,0 +1,140 @@
+package io.blushine.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link com.squareup.otto.Subscribe} or {@link SubscribeBatch} method of a registered
+ * subscriber
+ */
+class EventHandler {
+private final EventSubscriber mSubscriber;
+private final Object mTarget;
+private final EventMethods.HandlerMethod mMethod;
+private final EventMethods.Invoker mInvoker;
+/** Queued deliveries by coalescing key, created when first used */
+private volatile ConcurrentMap<Object, EventSubscriber.Delivery> mPendingDeliveries = null;
+/** Events collected for the next batch, null if none */
+private List<Object> mBatch = null;
+/** Index of each coalescing key in the batch */
+private Map<Object, Integer> mBatchKeys = null;
+
+/**
+ * @param subscriber the subscriber that has the method
+ * @param method the annotated method
+ */
+EventHandler(EventSubscriber subscriber, EventMethods.HandlerMethod method) {
+	mSubscriber = subscriber;
+	mTarget = subscriber.getTarget();
+	mMethod = method;
+	mInvoker = method.getInvoker();
+}
+
+/**
+ * Call the method with the event
+ * @param event the event to handle, or a list of events for a batch handler
+ * @throws Throwable anything the method throws
+ */
+void handle(Object event) throws Throwable {
+	mInvoker.invoke(mTarget, event);
+}
+
+/**
+ * @return true if the handler receives lists of events
+ */
+boolean isBatch() {
+	return mMethod.isBatch();
+}
+
+/**
+ * @return time in nanoseconds to collect events before the batch is delivered
+ */
+long getBatchIntervalNanos() {
+	return mMethod.getBatchIntervalNanos();
+}
+
+/**
+ * Add an event to the next batch. An event with the same coalescing key as an event already in the
+ * batch replaces it.
+ * @param event the event to add
+ * @param key coalescing key of the event, null to always add it
+ * @return true if this is the first event of the batch and the batch should be scheduled
+ */
+synchronized boolean addToBatch(Object event, Object key) {
+	boolean first = mBatch == null;
+	if (first) {
+		mBatch = new ArrayList<>();
+	}
+
+	if (key != null) {
+		if (mBatchKeys == null) {
+			mBatchKeys = new HashMap<>();
+		}
+		Integer index = mBatchKeys.get(key);
+		if (index != null) {
+			mBatch.set(index, event);
+			return first;
+		}
+		mBatchKeys.put(key, mBatch.size());
+	}
+	mBatch.add(event);
+	return first;
+}
+
+/**
+ * Take the collected events, the next event starts a new batch
+ * @return the collected events
+ */
+synchronized List<Object> takeBatch() {
+	List<Object> batch = mBatch;
+	mBatch = null;
+	mBatchKeys = null;
+	return batch;
+}
+
+/**
+ * @return queued deliveries by coalescing key
+ */
+ConcurrentMap<Object, EventSubscriber.Delivery> getPendingDeliveries() {
+	ConcurrentMap<Object, EventSubscriber.Delivery> pendingDeliveries = mPendingDeliveries;
+	if (pendingDeliveries == null) {
+		synchronized (this) {
+			if (mPendingDeliveries == null) {
+				mPendingDeliveries = new ConcurrentHashMap<>();
+			}
+			pendingDeliveries = mPendingDeliveries;
+		}
+	}
+	return pendingDeliveries;
+}
+
+/**
+ * @return the annotated method
+ */
+EventMethods.HandlerMethod getMethod() {
+	return mMethod;
+}
+
+/**
+ * @return the subscriber that has the method
+ */
+EventSubscriber getSubscriber() {
+	return mSubscriber;
+}
+
+/**
+ * @return type of events the method handles
+ */
+Class<?> getEventType() {
+	return mMethod.getEventType();
+}
+
+@Override
+public String toString() {
+	return "[EventHandler " + mMethod + "]";
+}
+}
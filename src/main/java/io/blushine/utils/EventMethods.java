@@ -0,0 +1,286 @@
+package io.blushine.utils;
+
+import com.squareup.otto.Produce;
+import com.squareup.otto.Subscribe;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link Subscribe}, {@link SubscribeBatch} and {@link Produce} methods of a class. Each class is only scanned once and
+ * each method is bound to an {@link Invoker} once. Public methods of public classes are bound
+ * through {@link LambdaMetafactory} so that calling them costs about the same as a direct call,
+ * other methods through a {@link MethodHandle}.
+ * <p>
+ * Same rules as Otto: only methods declared directly in the class are found, {@link Subscribe}
+ * methods must be public and take one concrete class, {@link Produce} methods must be public, take
+ * no arguments and return a concrete class. {@link SubscribeBatch} methods must be public and take
+ * one {@link List}.
+ */
+class EventMethods {
+private static final ClassValue<EventMethods> METHODS = new ClassValue<EventMethods>() {
+	@Override
+	protected EventMethods computeValue(Class<?> type) {
+		return new EventMethods(type);
+	}
+};
+private final HandlerMethod[] mHandlers;
+private final ProducerMethod[] mProducers;
+
+/**
+ * Scan the class
+ * @param type the class to scan
+ * @throws IllegalArgumentException if an annotated method is invalid
+ */
+private EventMethods(Class<?> type) {
+	List<HandlerMethod> handlers = new ArrayList<>();
+	List<ProducerMethod> producers = new ArrayList<>();
+	for (Method method : type.getDeclaredMethods()) {
+		if (method.isBridge()) {
+			continue;
+		}
+		if (method.isAnnotationPresent(Subscribe.class)) {
+			Class<?>[] parameterTypes = method.getParameterTypes();
+			if (parameterTypes.length != 1) {
+				throw new IllegalArgumentException("Method " + method + " has @Subscribe annotation but requires " + parameterTypes.length + " arguments. Methods must require a single argument.");
+			}
+			if (parameterTypes[0].isInterface()) {
+				throw new IllegalArgumentException("Method " + method + " has @Subscribe annotation on " + parameterTypes[0] + " which is an interface. Subscription must be on a concrete class type.");
+			}
+			if (!Modifier.isPublic(method.getModifiers())) {
+				throw new IllegalArgumentException("Method " + method + " has @Subscribe annotation on " + parameterTypes[0] + " but is not 'public'.");
+			}
+			handlers.add(new HandlerMethod(method, parameterTypes[0], -1, createInvoker(method)));
+		} else if (method.isAnnotationPresent(SubscribeBatch.class)) {
+			SubscribeBatch annotation = method.getAnnotation(SubscribeBatch.class);
+			Class<?>[] parameterTypes = method.getParameterTypes();
+			if (parameterTypes.length != 1 || !parameterTypes[0].isAssignableFrom(List.class)) {
+				throw new IllegalArgumentException("Method " + method + " has @SubscribeBatch annotation but doesn't require a single List argument.");
+			}
+			if (annotation.value().isInterface()) {
+				throw new IllegalArgumentException("Method " + method + " has @SubscribeBatch annotation on " + annotation.value() + " which is an interface. Subscription must be on a concrete class type.");
+			}
+			if (!Modifier.isPublic(method.getModifiers())) {
+				throw new IllegalArgumentException("Method " + method + " has @SubscribeBatch annotation on " + annotation.value() + " but is not 'public'.");
+			}
+			if (annotation.interval() < 0) {
+				throw new IllegalArgumentException("Method " + method + " has @SubscribeBatch annotation with a negative interval.");
+			}
+			long intervalNanos = TimeUnit.MILLISECONDS.toNanos(annotation.interval());
+			handlers.add(new HandlerMethod(method, annotation.value(), intervalNanos, createInvoker(method)));
+		} else if (method.isAnnotationPresent(Produce.class)) {
+			if (method.getParameterTypes().length != 0) {
+				throw new IllegalArgumentException("Method " + method + " has @Produce annotation but requires " + method.getParameterTypes().length + " arguments. Methods must require zero arguments.");
+			}
+			if (method.getReturnType() == Void.TYPE || method.getReturnType().isInterface()) {
+				throw new IllegalArgumentException("Method " + method + " has @Produce annotation but doesn't return a concrete class.");
+			}
+			if (!Modifier.isPublic(method.getModifiers())) {
+				throw new IllegalArgumentException("Method " + method + " has @Produce annotation on " + method.getReturnType() + " but is not 'public'.");
+			}
+			producers.add(new ProducerMethod(method, unreflect(method).asType(MethodType.methodType(Object.class, Object.class))));
+		}
+	}
+	mHandlers = handlers.toArray(new HandlerMethod[handlers.size()]);
+	mProducers = producers.toArray(new ProducerMethod[producers.size()]);
+}
+
+/**
+ * Get the cached methods of a class
+ * @param type the class to get the methods of
+ * @return all annotated methods of the class
+ * @throws IllegalArgumentException if an annotated method is invalid
+ */
+static EventMethods of(Class<?> type) {
+	return METHODS.get(type);
+}
+
+/**
+ * @return all {@link Subscribe} methods
+ */
+HandlerMethod[] getHandlers() {
+	return mHandlers;
+}
+
+/**
+ * @return all {@link Produce} methods
+ */
+ProducerMethod[] getProducers() {
+	return mProducers;
+}
+
+/**
+ * Create an invoker for a subscribe method
+ * @param method the method to invoke
+ * @return invoker that calls the method
+ */
+private static Invoker createInvoker(Method method) {
+	MethodHandle handle = unreflect(method);
+	Class<?> type = method.getDeclaringClass();
+	Class<?> parameterType = method.getParameterTypes()[0];
+
+	// Generate a direct call
+	if (Modifier.isPublic(type.getModifiers()) && isVisible(type) && Modifier.isPublic(parameterType.getModifiers()) && isVisible(parameterType)) {
+		try {
+			CallSite callSite = LambdaMetafactory.metafactory(
+					MethodHandles.lookup(),
+					"invoke",
+					MethodType.methodType(Invoker.class),
+					MethodType.methodType(void.class, Object.class, Object.class),
+					handle,
+					MethodType.methodType(void.class, type, parameterType)
+			);
+			return (Invoker) callSite.getTarget().invoke();
+		} catch (Throwable e) {
+			// Use the method handle instead
+		}
+	}
+
+	final MethodHandle genericHandle = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+	return new Invoker() {
+		@Override
+		public void invoke(Object target, Object event) throws Throwable {
+			genericHandle.invokeExact(target, event);
+		}
+	};
+}
+
+/**
+ * @param method the method to get a handle for
+ * @return handle that calls the method
+ */
+private static MethodHandle unreflect(Method method) {
+	try {
+		method.setAccessible(true);
+		return MethodHandles.lookup().unreflect(method);
+	} catch (IllegalAccessException | RuntimeException e) {
+		throw new IllegalArgumentException("Method " + method + " is not accessible", e);
+	}
+}
+
+/**
+ * @param type the class to check
+ * @return true if the class can be loaded through this class' class loader, which the generated
+ * invoker uses
+ */
+private static boolean isVisible(Class<?> type) {
+	try {
+		return Class.forName(type.getName(), false, EventMethods.class.getClassLoader()) == type;
+	} catch (ClassNotFoundException e) {
+		return false;
+	}
+}
+
+/**
+ * Calls a subscribe method
+ */
+interface Invoker {
+	/**
+	 * @param target the object to call the method on
+	 * @param event the event to pass to the method
+	 * @throws Throwable anything the method throws
+	 */
+	void invoke(Object target, Object event) throws Throwable;
+}
+
+/**
+ * A {@link Subscribe} or {@link SubscribeBatch} method
+ */
+static class HandlerMethod {
+	private final Method mMethod;
+	private final Class<?> mEventType;
+	private final long mBatchIntervalNanos;
+	private final Invoker mInvoker;
+
+	private HandlerMethod(Method method, Class<?> eventType, long batchIntervalNanos, Invoker invoker) {
+		mMethod = method;
+		mEventType = eventType;
+		mBatchIntervalNanos = batchIntervalNanos;
+		mInvoker = invoker;
+	}
+
+	/**
+	 * @return name of the method as "package.Class.method(EventClass)"
+	 */
+	String getName() {
+		return mMethod.getDeclaringClass().getName() + "." + mMethod.getName() + "(" + mEventType.getSimpleName() + ")";
+	}
+
+	/**
+	 * @return true if the method receives lists of events
+	 */
+	boolean isBatch() {
+		return mBatchIntervalNanos != -1;
+	}
+
+	/**
+	 * @return time in nanoseconds to collect events before the batch is delivered, -1 if not a batch
+	 * method
+	 */
+	long getBatchIntervalNanos() {
+		return mBatchIntervalNanos;
+	}
+
+	/**
+	 * @return type of events the method handles
+	 */
+	Class<?> getEventType() {
+		return mEventType;
+	}
+
+	/**
+	 * @return calls the method
+	 */
+	Invoker getInvoker() {
+		return mInvoker;
+	}
+
+	@Override
+	public String toString() {
+		return mMethod.toString();
+	}
+}
+
+/**
+ * A {@link Produce} method
+ */
+static class ProducerMethod {
+	private final Method mMethod;
+	private final MethodHandle mHandle;
+
+	private ProducerMethod(Method method, MethodHandle handle) {
+		mMethod = method;
+		mHandle = handle;
+	}
+
+	/**
+	 * @return type of events the method produces
+	 */
+	Class<?> getEventType() {
+		return mMethod.getReturnType();
+	}
+
+	/**
+	 * Call the method
+	 * @param target the object to call the method on
+	 * @return the produced event, can be null
+	 * @throws Throwable anything the method throws
+	 */
+	Object produce(Object target) throws Throwable {
+		return mHandle.invokeExact(target);
+	}
+
+	@Override
+	public String toString() {
+		return mMethod.toString();
+	}
+}
+}
@@ -0,0 +1,50 @@
+package io.blushine.utils;
+
+/**
+ * A {@link com.squareup.otto.Produce} method of a registered subscriber
+ */
+class EventProducer {
+private final Object mTarget;
+private final EventMethods.ProducerMethod mMethod;
+
+/**
+ * @param target the object that has the method
+ * @param method the annotated method
+ */
+EventProducer(Object target, EventMethods.ProducerMethod method) {
+	mTarget = target;
+	mMethod = method;
+}
+
+/**
+ * Call the method to produce the current event
+ * @return the produced event, can be null
+ * @throws IllegalStateException if the method threw an exception
+ */
+Object produce() {
+	try {
+		return mMethod.produce(mTarget);
+	} catch (Throwable e) {
+		throw new IllegalStateException("Producer " + this + " threw an exception", e);
+	}
+}
+
+/**
+ * @return the object that has the method
+ */
+Object getTarget() {
+	return mTarget;
+}
+
+/**
+ * @return type of events the method produces
+ */
+Class<?> getEventType() {
+	return mMethod.getEventType();
+}
+
+@Override
+public String toString() {
+	return "[EventProducer " + mMethod + "]";
+}
+}
@@ -0,0 +1,261 @@
+package io.blushine.utils;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An object registered to an {@link EventBus}. On an asynchronous bus events for the subscriber are
+ * queued and delivered one at a time on the bus' executor, so the subscriber receives them in the
+ * order they were posted and its handlers never run concurrently. Different subscribers are
+ * delivered to in parallel. Queued events with a coalescing key are replaced by newer events with
+ * the same key until they are delivered, and batch handlers get their events collected into lists.
+ */
+class EventSubscriber implements Runnable {
+/** Maximum events to deliver before giving the executor thread back */
+private static final int DRAIN_BATCH_SIZE = 64;
+private static final AtomicInteger NEXT_ID = new AtomicInteger();
+/** Unique id in the order the subscribers were created */
+private final int mId = NEXT_ID.getAndIncrement() & Integer.MAX_VALUE;
+private final Object mTarget;
+private final EventBus mBus;
+private final Executor mExecutor;
+private final EventHandler[] mHandlers;
+private final EventProducer[] mProducers;
+private final Queue<Delivery> mQueue = new ConcurrentLinkedQueue<>();
+/** True while the subscriber is scheduled on or running on the executor */
+private final AtomicBoolean mScheduled = new AtomicBoolean(false);
+/** Number of deliveries in the queue */
+private final AtomicInteger mcQueued = new AtomicInteger();
+private volatile boolean mValid = true;
+
+/**
+ * @param bus the bus the object is registered to
+ * @param executor executor to deliver the events on, null if the bus is synchronous
+ * @param target the registered object
+ * @throws IllegalArgumentException if an annotated method is invalid
+ * @see EventMethods
+ */
+EventSubscriber(EventBus bus, Executor executor, Object target) {
+	mBus = bus;
+	mExecutor = executor;
+	mTarget = target;
+
+	EventMethods methods = EventMethods.of(target.getClass());
+	EventMethods.HandlerMethod[] handlerMethods = methods.getHandlers();
+	mHandlers = new EventHandler[handlerMethods.length];
+	for (int i = 0; i < handlerMethods.length; ++i) {
+		mHandlers[i] = new EventHandler(this, handlerMethods[i]);
+	}
+	EventMethods.ProducerMethod[] producerMethods = methods.getProducers();
+	mProducers = new EventProducer[producerMethods.length];
+	for (int i = 0; i < producerMethods.length; ++i) {
+		mProducers[i] = new EventProducer(target, producerMethods[i]);
+	}
+}
+
+/**
+ * Queue an event and make sure the subscriber is scheduled to deliver it
+ * @param handler the handler to deliver the event to
+ * @param event the event to deliver
+ * @param key coalescing key of the event, null to always deliver it
+ */
+void enqueue(final EventHandler handler, Object event, Object key) {
+	if (handler.isBatch()) {
+		if (handler.addToBatch(event, key)) {
+			BatchScheduler.INSTANCE.schedule(new Runnable() {
+				@Override
+				public void run() {
+					mcQueued.incrementAndGet();
+					mQueue.add(new Delivery(handler, handler.takeBatch(), null));
+					schedule();
+				}
+			}, handler.getBatchIntervalNanos(), TimeUnit.NANOSECONDS);
+		}
+		return;
+	}
+
+	Delivery delivery = new Delivery(handler, event, key);
+	if (key != null) {
+		ConcurrentMap<Object, Delivery> pending = handler.getPendingDeliveries();
+		Delivery existing = pending.get(key);
+		if (existing != null && existing.replace(event)) {
+			return;
+		}
+		pending.put(key, delivery);
+	}
+	mcQueued.incrementAndGet();
+	mQueue.add(delivery);
+	schedule();
+}
+
+/**
+ * Schedule the subscriber on the executor unless it already is
+ */
+private void schedule() {
+	if (mScheduled.compareAndSet(false, true)) {
+		try {
+			mExecutor.execute(this);
+		} catch (RuntimeException e) {
+			mScheduled.set(false);
+			throw e;
+		}
+	}
+}
+
+/**
+ * Deliver queued events
+ */
+@Override
+public void run() {
+	for (int i = 0; i < DRAIN_BATCH_SIZE; ++i) {
+		Delivery delivery = mQueue.poll();
+		if (delivery == null) {
+			break;
+		}
+		mcQueued.decrementAndGet();
+		Object event = delivery.take();
+		if (delivery.mKey != null) {
+			delivery.mHandler.getPendingDeliveries().remove(delivery.mKey, delivery);
+		}
+		if (mValid) {
+			deliver(delivery.mHandler, event);
+		}
+	}
+
+	mScheduled.set(false);
+	// Events may have been added after the last poll
+	if (!mQueue.isEmpty()) {
+		schedule();
+	}
+}
+
+/**
+ * Deliver an event and report any exception to the bus' error listener
+ * @param handler the handler to deliver to
+ * @param event the event to deliver
+ */
+private void deliver(EventHandler handler, Object event) {
+	try {
+		mBus.invoke(handler, event);
+	} catch (Throwable e) {
+		mBus.getErrorListener().onError(e, event, mTarget);
+	}
+}
+
+/**
+ * Stop delivering events, events that are already queued are dropped
+ */
+void invalidate() {
+	mValid = false;
+	// Only count what this removes, run() may be draining at the same time
+	while (mQueue.poll() != null) {
+		mcQueued.decrementAndGet();
+	}
+}
+
+/**
+ * @return unique non-negative id, assigned in the order the subscribers were created
+ */
+int getId() {
+	return mId;
+}
+
+/**
+ * @return number of deliveries waiting in the queue
+ */
+int getQueuedCount() {
+	return mcQueued.get();
+}
+
+/**
+ * @return false if the subscriber has been unregistered
+ */
+boolean isValid() {
+	return mValid;
+}
+
+/**
+ * @return the registered object
+ */
+Object getTarget() {
+	return mTarget;
+}
+
+/**
+ * @return all {@link com.squareup.otto.Subscribe} methods of the object
+ */
+EventHandler[] getHandlers() {
+	return mHandlers;
+}
+
+/**
+ * @return all {@link com.squareup.otto.Produce} methods of the object
+ */
+EventProducer[] getProducers() {
+	return mProducers;
+}
+
+/**
+ * A queued event (or list of events for a batch handler). The event can be replaced until it has
+ * been taken for delivery.
+ */
+static class Delivery extends AtomicReference<Object> {
+	private static final long serialVersionUID = 1L;
+	/** Marks a delivery whose event has been taken */
+	private static final Object TAKEN = new Object();
+	private final EventHandler mHandler;
+	private final Object mKey;
+
+	private Delivery(EventHandler handler, Object event, Object key) {
+		super(event);
+		mHandler = handler;
+		mKey = key;
+	}
+
+	/**
+	 * Replace the event unless it has been taken
+	 * @param event the newer event
+	 * @return true if replaced, false if it has already been taken
+	 */
+	private boolean replace(Object event) {
+		Object current;
+		do {
+			current = get();
+			if (current == TAKEN) {
+				return false;
+			}
+		} while (!compareAndSet(current, event));
+		return true;
+	}
+
+	/**
+	 * @return the event to deliver
+	 */
+	private Object take() {
+		return getAndSet(TAKEN);
+	}
+}
+
+/**
+ * Delivers the batches when their interval has passed, created when first used
+ */
+private static class BatchScheduler {
+	private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "EventBus batches");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+}
+}
@@ -0,0 +1,105 @@
+package io.blushine.utils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.function.Supplier;
+
+/**
+ * Creates and caches factories that call the public no-argument constructor of a class. The
+ * constructor is only looked up once per class. Constructors of public classes are bound through
+ * {@link LambdaMetafactory} so that calling the factory costs the same as calling {@code new}
+ * directly, constructors of other classes through a {@link MethodHandle}.
+ */
+public class Factories {
+private static final ClassValue<Supplier<?>> FACTORIES = new ClassValue<Supplier<?>>() {
+	@Override
+	protected Supplier<?> computeValue(Class<?> type) {
+		return createFactory(type);
+	}
+};
+
+/**
+ * Get the cached factory for the class
+ * @param <Type> the type to create
+ * @param clazz the class to create instances of
+ * @return factory that creates new instances through the no-argument constructor
+ * @throws IllegalArgumentException if the class doesn't have an accessible public no-argument constructor
+ */
+@SuppressWarnings("unchecked")
+public static <Type> Supplier<Type> getFactory(Class<Type> clazz) {
+	return (Supplier<Type>) FACTORIES.get(clazz);
+}
+
+/**
+ * Create a new instance through the cached factory
+ * @param <Type> the type to create
+ * @param clazz the class to create an instance of
+ * @return new instance
+ * @throws IllegalArgumentException if the class doesn't have an accessible public no-argument constructor
+ */
+public static <Type> Type newInstance(Class<Type> clazz) {
+	return getFactory(clazz).get();
+}
+
+/**
+ * Create a factory for the class
+ * @param type the class to create instances of
+ * @return factory that creates new instances
+ */
+private static Supplier<?> createFactory(Class<?> type) {
+	if (type.isInterface() || Modifier.isAbstract(type.getModifiers()) || type.isPrimitive() || type.isArray()) {
+		throw new IllegalArgumentException(type.getName() + " can't be instantiated");
+	}
+
+	Constructor<?> constructor;
+	try {
+		constructor = type.getConstructor();
+	} catch (NoSuchMethodException e) {
+		throw new IllegalArgumentException(type.getName() + " has no public no-argument constructor", e);
+	}
+
+	MethodHandle constructorHandle;
+	try {
+		constructorHandle = MethodHandles.lookup().unreflectConstructor(constructor);
+	} catch (IllegalAccessException | RuntimeException e) {
+		throw new IllegalArgumentException(type.getName() + " has no accessible public no-argument constructor", e);
+	}
+
+	// Generate a direct call
+	if (Modifier.isPublic(type.getModifiers())) {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			CallSite callSite = LambdaMetafactory.metafactory(
+					lookup,
+					"get",
+					MethodType.methodType(Supplier.class),
+					MethodType.methodType(Object.class),
+					constructorHandle,
+					MethodType.methodType(type)
+			);
+			return (Supplier<?>) callSite.getTarget().invoke();
+		} catch (Throwable e) {
+			// Not visible from this class loader, use the method handle instead
+		}
+	}
+
+	final MethodHandle genericHandle = constructorHandle.asType(MethodType.methodType(Object.class));
+	return new Supplier<Object>() {
+		@Override
+		public Object get() {
+			try {
+				return genericHandle.invokeExact();
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException("Failed to create " + type.getName(), e);
+			}
+		}
+	};
+}
+}
@@ -0,0 +1,121 @@
+package io.blushine.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wrapper for an input stream with progress. By default an event is sent for every read, use
+ * {@link #setMinBytesDelta(long)}, {@link #setMinInterval(long, TimeUnit)} and {@link
+ * #setPercentageStep(float)} to throttle the events. The event for the last byte (or for reaching
+ * the end of the stream if the total is unknown) is always sent. Mark and reset are not supported.
+ * @see ProgressReporter
+ */
+public class InputStreamProgress extends InputStream {
+/** Original input stream */
+private final InputStream mInputStream;
+/** Counts read bytes and sends the events */
+private final ProgressReporter mProgress;
+
+/**
+ * @param inputStream original input stream to wrap
+ */
+public InputStreamProgress(InputStream inputStream) {
+	this(inputStream, -1);
+}
+
+/**
+ * @param inputStream original input stream to wrap
+ * @param cTotalBytes total byte count, -1 if not known
+ */
+public InputStreamProgress(InputStream inputStream, long cTotalBytes) {
+	this(inputStream, cTotalBytes, new EventBusProgressListener());
+}
+
+/**
+ * @param inputStream original input stream to wrap
+ * @param cTotalBytes total byte count, -1 if not known
+ * @param listener gets the number of read bytes instead of the {@link EventBus}
+ */
+public InputStreamProgress(InputStream inputStream, long cTotalBytes, ProgressListener listener) {
+	mInputStream = inputStream;
+	mProgress = new ProgressReporter(cTotalBytes, listener);
+}
+
+/**
+ * Only send an event when at least this many bytes have been read since the last event
+ * @param minBytesDelta minimum number of bytes between events, 0 to disable
+ */
+public void setMinBytesDelta(long minBytesDelta) {
+	mProgress.setMinDelta(minBytesDelta);
+}
+
+/**
+ * Only send an event when at least this much time has passed since the last event
+ * @param minInterval minimum time between events, 0 to disable
+ * @param unit unit of minInterval
+ * @see ProgressReporter#setMinInterval(long, TimeUnit)
+ */
+public void setMinInterval(long minInterval, TimeUnit unit) {
+	mProgress.setMinInterval(minInterval, unit);
+}
+
+/**
+ * Only send an event when the progress has increased this many percent since the last event. Has
+ * no effect if the total is unknown.
+ * @param percentageStep minimum percentage between events, 0 to disable
+ */
+public void setPercentageStep(float percentageStep) {
+	mProgress.setPercentageStep(percentageStep);
+}
+
+@Override
+public int read() throws IOException {
+	int b = mInputStream.read();
+	if (b != -1) {
+		mProgress.add(1);
+	} else {
+		mProgress.finish();
+	}
+	return b;
+}
+
+@Override
+public int read(byte[] b, int off, int len) throws IOException {
+	int cRead = mInputStream.read(b, off, len);
+	if (cRead > 0) {
+		mProgress.add(cRead);
+	} else if (cRead == -1) {
+		mProgress.finish();
+	}
+	return cRead;
+}
+
+@Override
+public long skip(long n) throws IOException {
+	long cSkipped = mInputStream.skip(n);
+	if (cSkipped > 0) {
+		mProgress.add(cSkipped);
+	}
+	return cSkipped;
+}
+
+@Override
+public int available() throws IOException {
+	return mInputStream.available();
+}
+
+@Override
+public boolean markSupported() {
+	return false;
+}
+
+/**
+ * Closes the original stream and sends the final event if it hasn't been sent already
+ */
+@Override
+public void close() throws IOException {
+	mInputStream.close();
+	mProgress.finish();
+}
+}
@@ -0,0 +1,231 @@
+package io.blushine.utils;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * Growable list of primitive ints. Use instead of {@code List<Integer>} to avoid boxing. {@link
+ * #clear()} keeps the capacity so the list can be reused without allocating.
+ */
+public class IntList {
+private static final int CAPACITY_DEFAULT = 16;
+private int[] mValues;
+private int mSize = 0;
+
+/**
+ * Create an empty list with the default capacity
+ */
+public IntList() {
+	this(CAPACITY_DEFAULT);
+}
+
+/**
+ * Create an empty list
+ * @param capacity initial capacity
+ */
+public IntList(int capacity) {
+	mValues = new int[capacity];
+}
+
+/**
+ * Add a value to the end of the list
+ * @param value the value to add
+ */
+public void add(int value) {
+	if (mSize == mValues.length) {
+		grow(mSize + 1);
+	}
+	mValues[mSize++] = value;
+}
+
+/**
+ * Add values to the end of the list
+ * @param values the values to add
+ * @param offset first value to add
+ * @param length number of values to add
+ */
+public void addAll(int[] values, int offset, int length) {
+	ensureCapacity(mSize + length);
+	System.arraycopy(values, offset, mValues, mSize, length);
+	mSize += length;
+}
+
+/**
+ * Add values to the end of the list
+ * @param values the values to add
+ */
+public void addAll(int[] values) {
+	addAll(values, 0, values.length);
+}
+
+/**
+ * @param index index of the value
+ * @return the value at the specified index
+ * @throws IndexOutOfBoundsException if the index is out of range
+ */
+public int get(int index) {
+	checkIndex(index);
+	return mValues[index];
+}
+
+/**
+ * Set a value
+ * @param index index of the value
+ * @param value the new value
+ * @return the previous value
+ * @throws IndexOutOfBoundsException if the index is out of range
+ */
+public int set(int index, int value) {
+	checkIndex(index);
+	int previous = mValues[index];
+	mValues[index] = value;
+	return previous;
+}
+
+/**
+ * Remove a value, shifts all later values to the left
+ * @param index index of the value to remove
+ * @return the removed value
+ * @throws IndexOutOfBoundsException if the index is out of range
+ */
+public int removeAt(int index) {
+	checkIndex(index);
+	int removed = mValues[index];
+	System.arraycopy(mValues, index + 1, mValues, index, mSize - index - 1);
+	mSize--;
+	return removed;
+}
+
+/**
+ * @param value the value to search for
+ * @return index of the first occurrence of the value, -1 if not found
+ */
+public int indexOf(int value) {
+	for (int i = 0; i < mSize; ++i) {
+		if (mValues[i] == value) {
+			return i;
+		}
+	}
+	return -1;
+}
+
+/**
+ * @param value the value to search for
+ * @return true if the list contains the value
+ */
+public boolean contains(int value) {
+	return indexOf(value) != -1;
+}
+
+/**
+ * @return number of values in the list
+ */
+public int size() {
+	return mSize;
+}
+
+/**
+ * @return true if the list is empty
+ */
+public boolean isEmpty() {
+	return mSize == 0;
+}
+
+/**
+ * Remove all values. Keeps the capacity
+ */
+public void clear() {
+	mSize = 0;
+}
+
+/**
+ * Make sure the list can hold the specified number of values without growing
+ * @param capacity minimum capacity
+ */
+public void ensureCapacity(int capacity) {
+	if (capacity > mValues.length) {
+		grow(capacity);
+	}
+}
+
+/**
+ * Grow the backing array geometrically
+ * @param minCapacity minimum capacity
+ */
+private void grow(int minCapacity) {
+	int newCapacity = Math.max(mValues.length + (mValues.length >> 1) + 1, minCapacity);
+	mValues = Arrays.copyOf(mValues, newCapacity);
+}
+
+/**
+ * @param index check that this index is in range
+ */
+private void checkIndex(int index) {
+	if (index < 0 || index >= mSize) {
+		throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+	}
+}
+
+/**
+ * Call the action for each value without boxing
+ * @param action called for each value in order
+ */
+public void forEach(IntConsumer action) {
+	for (int i = 0; i < mSize; ++i) {
+		action.accept(mValues[i]);
+	}
+}
+
+/**
+ * @return iterator over all values that doesn't box them
+ */
+public PrimitiveIterator.OfInt iterator() {
+	return new PrimitiveIterator.OfInt() {
+		private int mIndex = 0;
+
+		@Override
+		public boolean hasNext() {
+			return mIndex < mSize;
+		}
+
+		@Override
+		public int nextInt() {
+			if (mIndex >= mSize) {
+				throw new NoSuchElementException();
+			}
+			return mValues[mIndex++];
+		}
+	};
+}
+
+/**
+ * @return copy of all values
+ */
+public int[] toArray() {
+	return Arrays.copyOf(mValues, mSize);
+}
+
+/**
+ * Copy all values to an existing array
+ * @param array the array to copy to, must be at least {@link #size()} long
+ * @return number of copied values
+ */
+public int toArray(int[] array) {
+	System.arraycopy(mValues, 0, array, 0, mSize);
+	return mSize;
+}
+
+@Override
+public String toString() {
+	StringBuilder stringBuilder = new StringBuilder("[");
+	for (int i = 0; i < mSize; ++i) {
+		if (i > 0) {
+			stringBuilder.append(", ");
+		}
+		stringBuilder.append(mValues[i]);
+	}
+	return stringBuilder.append(']').toString();
+}
+}
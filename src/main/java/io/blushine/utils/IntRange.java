@@ -0,0 +1,163 @@
+package io.blushine.utils;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * A range of indices in an array/list that can wrap from back to front. The range is only a view,
+ * no indices are stored, so it can be reused by calling one of the set methods.
+ * @see Collections#getIndicesBetween(int, int, boolean, int, boolean, IntRange)
+ */
+public class IntRange {
+private int mStart = 0;
+private int mCount = 0;
+/** Wrap to 0 when reaching this value */
+private int mWrapAt = Integer.MAX_VALUE;
+
+/**
+ * Create an empty range
+ */
+public IntRange() {
+}
+
+/**
+ * Set the range without wrapping
+ * @param start first index
+ * @param count number of indices
+ * @return this range
+ */
+public IntRange set(int start, int count) {
+	mStart = start;
+	mCount = Math.max(count, 0);
+	mWrapAt = Integer.MAX_VALUE;
+	return this;
+}
+
+/**
+ * Set the range that wraps to 0 when reaching the size
+ * @param size the size of the array/list
+ * @param start first index, must be in [0, size)
+ * @param count number of indices, at most size
+ * @return this range
+ */
+public IntRange setWrapped(int size, int start, int count) {
+	mStart = start;
+	mCount = Math.max(count, 0);
+	mWrapAt = size;
+	return this;
+}
+
+/**
+ * @param i index in the range, 0 is the first index
+ * @return the (wrapped) array/list index
+ */
+public int get(int i) {
+	if (i < 0 || i >= mCount) {
+		throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + mCount);
+	}
+	int index = mStart + i;
+	return index >= mWrapAt ? index - mWrapAt : index;
+}
+
+/**
+ * @return number of indices in the range
+ */
+public int size() {
+	return mCount;
+}
+
+/**
+ * @return true if the range is empty
+ */
+public boolean isEmpty() {
+	return mCount == 0;
+}
+
+/**
+ * @param index array/list index
+ * @return true if the index is in the range
+ */
+public boolean contains(int index) {
+	if (index < 0 || index >= mWrapAt) {
+		return false;
+	}
+	int offset = index - mStart;
+	if (offset < 0) {
+		offset += mWrapAt;
+	}
+	return offset < mCount;
+}
+
+/**
+ * Call the action for each index without boxing or allocating
+ * @param action called for each index in order
+ */
+public void forEach(IntConsumer action) {
+	// Split into the part before and after wrapping
+	int firstEnd = (int) Math.min((long) mStart + mCount, mWrapAt);
+	for (int index = mStart; index < firstEnd; ++index) {
+		action.accept(index);
+	}
+	int secondEnd = mCount - (firstEnd - mStart);
+	for (int index = 0; index < secondEnd; ++index) {
+		action.accept(index);
+	}
+}
+
+/**
+ * Copy all indices to an array
+ * @param array the array to copy to, must be at least {@link #size()} long
+ * @return number of copied indices
+ */
+public int toArray(int[] array) {
+	for (int i = 0; i < mCount; ++i) {
+		int index = mStart + i;
+		array[i] = index >= mWrapAt ? index - mWrapAt : index;
+	}
+	return mCount;
+}
+
+/**
+ * @return all indices in a new array
+ */
+public int[] toArray() {
+	int[] array = new int[mCount];
+	toArray(array);
+	return array;
+}
+
+/**
+ * @return iterator over all indices that doesn't box them
+ */
+public PrimitiveIterator.OfInt iterator() {
+	return new PrimitiveIterator.OfInt() {
+		private int mI = 0;
+
+		@Override
+		public boolean hasNext() {
+			return mI < mCount;
+		}
+
+		@Override
+		public int nextInt() {
+			if (mI >= mCount) {
+				throw new NoSuchElementException();
+			}
+			return get(mI++);
+		}
+	};
+}
+
+@Override
+public String toString() {
+	StringBuilder stringBuilder = new StringBuilder("[");
+	for (int i = 0; i < mCount; ++i) {
+		if (i > 0) {
+			stringBuilder.append(", ");
+		}
+		stringBuilder.append(get(i));
+	}
+	return stringBuilder.append(']').toString();
+}
+}
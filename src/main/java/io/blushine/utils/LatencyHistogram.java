@@ -0,0 +1,179 @@
+package io.blushine.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory histogram of non-negative values, e.g. latencies in nanoseconds. Buckets are
+ * log-linear like HdrHistogram: each power of two is split into 2^precisionBits linear sub-buckets,
+ * so every value is recorded with a relative error below 2^-precisionBits (about 3% with the
+ * default of 5 bits) over the whole long range. Recording is lock-free, thread-safe and never
+ * allocates.
+ */
+public class LatencyHistogram {
+/** Default number of bits of precision */
+private static final int PRECISION_BITS_DEFAULT = 5;
+private static final int STAT_TOTAL_COUNT = 0;
+private static final int STAT_SUM = 1;
+private static final int STAT_MAX = 2;
+private static final int STAT_COUNT = 3;
+private final int mPrecisionBits;
+/** Number of sub-buckets per power of two */
+private final int mSubBucketCount;
+private final AtomicLongArray mCounts;
+/** Total count, sum and max */
+private final AtomicLongArray mStats = new AtomicLongArray(STAT_COUNT);
+
+/**
+ * Create a histogram with about 3% precision
+ */
+public LatencyHistogram() {
+	this(PRECISION_BITS_DEFAULT);
+}
+
+/**
+ * Create a histogram
+ * @param precisionBits number of bits of precision (1-10), memory use is (64 - precisionBits) *
+ * 2^precisionBits longs
+ */
+public LatencyHistogram(int precisionBits) {
+	if (precisionBits < 1 || precisionBits > 10) {
+		throw new IllegalArgumentException("precisionBits must be 1-10: " + precisionBits);
+	}
+	mPrecisionBits = precisionBits;
+	mSubBucketCount = 1 << precisionBits;
+	mCounts = new AtomicLongArray((64 - precisionBits) * mSubBucketCount);
+}
+
+/**
+ * Record a value
+ * @param value the value to record, negative values are recorded as 0
+ */
+public void record(long value) {
+	if (value < 0) {
+		value = 0;
+	}
+	mCounts.incrementAndGet(getIndex(value));
+	mStats.incrementAndGet(STAT_TOTAL_COUNT);
+	mStats.addAndGet(STAT_SUM, value);
+	long max;
+	while (value > (max = mStats.get(STAT_MAX))) {
+		if (mStats.compareAndSet(STAT_MAX, max, value)) {
+			break;
+		}
+	}
+}
+
+/**
+ * @param value a non-negative value
+ * @return index of the bucket for the value
+ */
+private int getIndex(long value) {
+	if (value < mSubBucketCount) {
+		return (int) value;
+	}
+	int exponent = 63 - Long.numberOfLeadingZeros(value);
+	int shift = exponent - mPrecisionBits;
+	int subBucket = (int) (value >>> shift) - mSubBucketCount;
+	return (shift + 1) * mSubBucketCount + subBucket;
+}
+
+/**
+ * @param index index of a bucket
+ * @return highest value that is recorded in the bucket
+ */
+private long getHighestValue(int index) {
+	if (index < mSubBucketCount) {
+		return index;
+	}
+	int shift = index / mSubBucketCount - 1;
+	long mantissa = mSubBucketCount + index % mSubBucketCount;
+	return ((mantissa + 1) << shift) - 1;
+}
+
+/**
+ * @return number of recorded values
+ */
+public long getCount() {
+	return mStats.get(STAT_TOTAL_COUNT);
+}
+
+/**
+ * @return highest recorded value, 0 if empty
+ */
+public long getMax() {
+	return mStats.get(STAT_MAX);
+}
+
+/**
+ * @return mean of the recorded values, 0 if empty
+ */
+public double getMean() {
+	long count = getCount();
+	return count != 0 ? (double) mStats.get(STAT_SUM) / count : 0;
+}
+
+/**
+ * Get the value at a percentile. The value is the highest value of the bucket, so it's never
+ * lower than the real value.
+ * @param percentile the percentile (0-100), e.g. 99.9
+ * @return value at the percentile, 0 if empty
+ */
+public long getValueAtPercentile(double percentile) {
+	long count = getCount();
+	if (count == 0) {
+		return 0;
+	}
+	long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+	long cumulative = 0;
+	for (int i = 0; i < mCounts.length(); ++i) {
+		cumulative += mCounts.get(i);
+		if (cumulative >= rank) {
+			return Math.min(getHighestValue(i), getMax());
+		}
+	}
+	return getMax();
+}
+
+/**
+ * Add all values recorded in another histogram, e.g. to combine the histograms of several threads
+ * or intervals. Values recorded in the other histogram at the same time may be missed.
+ * @param other the histogram to add, must have the same precision
+ */
+public void merge(LatencyHistogram other) {
+	if (other.mPrecisionBits != mPrecisionBits) {
+		throw new IllegalArgumentException("Different precision: " + other.mPrecisionBits + " != " + mPrecisionBits);
+	}
+	for (int i = 0; i < mCounts.length(); ++i) {
+		long count = other.mCounts.get(i);
+		if (count != 0) {
+			mCounts.addAndGet(i, count);
+		}
+	}
+	mStats.addAndGet(STAT_TOTAL_COUNT, other.mStats.get(STAT_TOTAL_COUNT));
+	mStats.addAndGet(STAT_SUM, other.mStats.get(STAT_SUM));
+	long otherMax = other.getMax();
+	long max;
+	while (otherMax > (max = mStats.get(STAT_MAX))) {
+		if (mStats.compareAndSet(STAT_MAX, max, otherMax)) {
+			break;
+		}
+	}
+}
+
+/**
+ * Remove all recorded values. Values recorded at the same time may be lost.
+ */
+public void reset() {
+	for (int i = 0; i < mCounts.length(); ++i) {
+		mCounts.set(i, 0);
+	}
+	for (int i = 0; i < STAT_COUNT; ++i) {
+		mStats.set(i, 0);
+	}
+}
+
+@Override
+public String toString() {
+	return "count: " + getCount() + ", mean: " + (long) getMean() + ", p50: " + getValueAtPercentile(50) + ", p99: " + getValueAtPercentile(99) + ", max: " + getMax();
+}
+}
@@ -0,0 +1,107 @@
+package io.blushine.utils;
+
+import java.util.List;
+
+/**
+ * Temporary open addressing hash index over the elements of a list. Maps each distinct element to
+ * its first index in the list. Elements are either compared by identity (like {@link
+ * java.util.IdentityHashMap}) or by equality. Null elements are allowed and only match null.
+ * @see Collections#indexOfEach(List, List, boolean)
+ */
+class ListIndex {
+/** Maximum fill ratio is 1/2 */
+private static final int LOAD_FACTOR_SHIFT = 1;
+/** The indexed elements */
+private final Object[] mElements;
+/** Slot to element index + 1, 0 if empty */
+private final int[] mSlots;
+private final int mMask;
+private final boolean mIdentity;
+
+/**
+ * Create the index
+ * @param list the list to index
+ * @param identity true to compare elements by identity, false to use equals
+ */
+ListIndex(List<?> list, boolean identity) {
+	mElements = list.toArray();
+	mIdentity = identity;
+	int capacity = Maths.nextPowerOfTwo(Math.max(mElements.length << LOAD_FACTOR_SHIFT, 2));
+	mSlots = new int[capacity];
+	mMask = capacity - 1;
+
+	for (int i = 0; i < mElements.length; ++i) {
+		Object element = mElements[i];
+		int slot = slotOf(element);
+		while (mSlots[slot] != 0) {
+			// Keep the first index
+			if (matches(mElements[mSlots[slot] - 1], element)) {
+				break;
+			}
+			slot = (slot + 1) & mMask;
+		}
+		if (mSlots[slot] == 0) {
+			mSlots[slot] = i + 1;
+		}
+	}
+}
+
+/**
+ * @param element the element to search for
+ * @return first index of the element in the list, -1 if not found
+ */
+int indexOf(Object element) {
+	int slot = slotOf(element);
+	while (mSlots[slot] != 0) {
+		int index = mSlots[slot] - 1;
+		if (matches(mElements[index], element)) {
+			return index;
+		}
+		slot = (slot + 1) & mMask;
+	}
+	return -1;
+}
+
+/**
+ * @param element the element to search for
+ * @return true if the list contains the element
+ */
+boolean contains(Object element) {
+	return indexOf(element) != -1;
+}
+
+/**
+ * @param element element to get the start slot for
+ * @return slot where the search should start
+ */
+private int slotOf(Object element) {
+	int hash;
+	if (element == null) {
+		hash = 0;
+	} else if (mIdentity) {
+		hash = System.identityHashCode(element);
+	} else {
+		hash = element.hashCode();
+	}
+
+	// Spread the bits (Fibonacci hashing)
+	hash *= 0x9E3779B9;
+	return (hash ^ (hash >>> 16)) & mMask;
+}
+
+/**
+ * Checks if two elements match
+ * @param indexed element in the list
+ * @param element element to search for
+ * @return true if they match
+ */
+private boolean matches(Object indexed, Object element) {
+	if (indexed == element) {
+		return true;
+	} else if (mIdentity || indexed == null) {
+		return false;
+	} else {
+		return indexed.equals(element);
+	}
+}
+}
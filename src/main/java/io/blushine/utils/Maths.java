@@ -58,6 +58,31 @@ public static float FLOAT_EQUALS_DELTA = 0.001f;
 		return diff <= FLOAT_EQUALS_DELTA && diff >= -FLOAT_EQUALS_DELTA;
 	}
 
+	/**
+	 * Checks whether the value is a power of two
+	 * @param value the value to check
+	 * @return true if value is a positive power of two
+	 */
+	public static boolean isPowerOfTwo(int value) {
+		return value > 0 && (value & (value - 1)) == 0;
+	}
+
+	/**
+	 * Calculate the smallest power of two that is greater than or equal to the value
+	 * @param value the value to round up
+	 * @return power of two that is greater or equal to value, 1 if value is less than 1
+	 * @throws IllegalArgumentException if the result doesn't fit in an int
+	 */
+	public static int nextPowerOfTwo(int value) {
+		if (value > 1 << 30) {
+			throw new IllegalArgumentException("No power of two for " + value + " fits in an int");
+		}
+		if (value <= 1) {
+			return 1;
+		}
+		return Integer.highestOneBit(value - 1) << 1;
+	}
+
 	/**
 	 * Calculate order of magnitude for the value
 	 * @param value
@@ -0,0 +1,29 @@
+package io.blushine.utils;
+
+/**
+ * Progress event that can be updated and posted again instead of allocating a new event for every
+ * update. Only safe when the event bus delivers synchronously (the default) and the subscribers
+ * don't keep a reference to the event after handling it.
+ * @see EventBusProgressListener#EventBusProgressListener(boolean)
+ */
+public class MutableProgressEvent extends ProgressEvent {
+/**
+ * Create an event without any progress
+ */
+public MutableProgressEvent() {
+	super(0, -1);
+}
+
+/**
+ * Update the event
+ * @param complete how many parts have been completed
+ * @param total total number of parts to process
+ * @param message an optional message for the progress
+ * @param rate smoothed number of parts completed per second, NaN if not known
+ * @return this event
+ */
+public MutableProgressEvent update(long complete, long total, String message, double rate) {
+	set(complete, total, message, rate);
+	return this;
+}
+}
@@ -2,13 +2,13 @@ package io.blushine.utils;
 
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -67,43 +67,59 @@ private SecretKeySpec mKey;
 	 */
 	public <EncryptType> byte[] encrypt(EncryptType obj) throws InvalidKeyException, InvalidAlgorithmParameterException, IOException,
 			IllegalBlockSizeException, ShortBufferException, BadPaddingException {
-		byte[] input = null;
-		if (!(obj instanceof byte[])) {
-			input = convertToByteArray(obj);
-		} else {
-			input = (byte[]) obj;
-		}
 		mEnCipher.init(Cipher.ENCRYPT_MODE, mKey);
 
 		// Get IV for the encryption
 		byte[] iv = mEnCipher.getIV();
-		byte[] encryptedBytes = mEnCipher.doFinal(input);
 
 		// Includes IV for decrypting
-		// Concatenates both byte arrays to message
-		byte[] ivAndEncrypted = new byte[iv.length + encryptedBytes.length];
+		if (obj instanceof byte[]) {
+			byte[] input = (byte[]) obj;
+			byte[] ivAndEncrypted = new byte[iv.length + mEnCipher.getOutputSize(input.length)];
+			System.arraycopy(iv, 0, ivAndEncrypted, 0, iv.length);
+			int cEncrypted = mEnCipher.doFinal(input, 0, input.length, ivAndEncrypted, iv.length);
+			return trim(ivAndEncrypted, iv.length + cEncrypted);
+		}
+
+		// Encrypt the serialized chunks directly without flattening them first
+		ChunkedOutputStream input = convertToChunks(obj);
+		byte[] ivAndEncrypted = new byte[iv.length + mEnCipher.getOutputSize((int) input.size())];
 		System.arraycopy(iv, 0, ivAndEncrypted, 0, iv.length);
-		System.arraycopy(encryptedBytes, 0, ivAndEncrypted, iv.length, encryptedBytes.length);
+		int offset = iv.length;
+		for (int i = 0; i < input.getChunkCount(); ++i) {
+			offset += mEnCipher.update(input.getChunk(i), 0, input.getChunkLength(i), ivAndEncrypted, offset);
+		}
+		offset += mEnCipher.doFinal(ivAndEncrypted, offset);
 
-		return ivAndEncrypted;
+		return trim(ivAndEncrypted, offset);
+	}
+
+	/**
+	 * Trim the array if it's longer than needed
+	 * @param bytes the array to trim
+	 * @param length number of used bytes
+	 * @return same array if fully used, otherwise a copy of the used bytes
+	 */
+	private static byte[] trim(byte[] bytes, int length) {
+		return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
 	}
 
 /**
- * Converts an object into a byte array
+ * Serializes an object into chunks
  * @param complexObject
- * @return byte array of the converted object
+ * @return serialized object
  * @throws IOException
  */
-private byte[] convertToByteArray(Object complexObject) throws IOException {
-	ByteArrayOutputStream baos;
+private ChunkedOutputStream convertToChunks(Object complexObject) throws IOException {
+	ChunkedOutputStream chunks;
 	ObjectOutputStream out;
 	
-	baos = new ByteArrayOutputStream();
-	out = new ObjectOutputStream(baos);
+	chunks = new ChunkedOutputStream();
+	out = new ObjectOutputStream(chunks);
 	out.writeObject(complexObject);
 	out.close();
 	
-	return baos.toByteArray();
+	return chunks;
 	
 }
 
@@ -0,0 +1,143 @@
+package io.blushine.utils;
+
+import io.blushine.utils.concurrent.MpmcRingBuffer;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded object pool that reuses instances instead of allocating new ones. Each thread first uses
+ * its own small cache and then a shared lock-free buffer, so threads rarely contend. When the pool
+ * is empty a new instance is created, when it's full freed instances are left to the garbage
+ * collector.
+ * @param <Type> type of the pooled objects
+ */
+public class ObjectPool<Type> implements Supplier<Type> {
+/** Default number of objects in the shared buffer */
+private static final int CAPACITY_DEFAULT = 256;
+/** Default number of objects cached per thread */
+private static final int THREAD_CAPACITY_DEFAULT = 8;
+private final Supplier<? extends Type> mFactory;
+private final Consumer<? super Type> mResetter;
+private final MpmcRingBuffer<Type> mShared;
+private final int mThreadCapacity;
+private final ThreadLocal<ArrayDeque<Type>> mThreadCache = new ThreadLocal<ArrayDeque<Type>>() {
+	@Override
+	protected ArrayDeque<Type> initialValue() {
+		return new ArrayDeque<>(mThreadCapacity);
+	}
+};
+
+/**
+ * Create a pool of the class, new instances are created through {@link Factories}
+ * @param clazz type of the pooled objects
+ */
+public ObjectPool(Class<Type> clazz) {
+	this(Factories.getFactory(clazz), null, CAPACITY_DEFAULT, THREAD_CAPACITY_DEFAULT);
+}
+
+/**
+ * Create a pool where new and freed objects are set to a copy of the template, so that {@link
+ * #obtain()} always returns an object equal to the template
+ * @param <CopyableType> type of the pooled objects
+ * @param clazz type of the pooled objects
+ * @param template new and freed objects are set to a copy of this template
+ * @return new pool
+ */
+public static <CopyableType extends ICopyable<CopyableType>> ObjectPool<CopyableType> withTemplate(Class<CopyableType> clazz, final CopyableType template) {
+	final Supplier<CopyableType> factory = Factories.getFactory(clazz);
+	return new ObjectPool<>(new Supplier<CopyableType>() {
+		@Override
+		public CopyableType get() {
+			CopyableType object = factory.get();
+			template.copy(object);
+			return object;
+		}
+	}, new Consumer<CopyableType>() {
+		@Override
+		public void accept(CopyableType object) {
+			template.copy(object);
+		}
+	}, CAPACITY_DEFAULT, THREAD_CAPACITY_DEFAULT);
+}
+
+/**
+ * Create a pool
+ * @param factory creates new objects when the pool is empty
+ * @param resetter resets objects when they are freed, can be null
+ * @param capacity maximum number of objects in the shared buffer (rounded up to a power of two)
+ * @param threadCapacity maximum number of objects cached per thread
+ */
+public ObjectPool(Supplier<? extends Type> factory, Consumer<? super Type> resetter, int capacity, int threadCapacity) {
+	if (factory == null) {
+		throw new IllegalArgumentException("factory is null");
+	}
+	mFactory = factory;
+	mResetter = resetter;
+	mShared = new MpmcRingBuffer<>(capacity);
+	mThreadCapacity = threadCapacity;
+}
+
+/**
+ * Get a pooled object or create a new one if the pool is empty
+ * @return pooled or new object
+ */
+public Type obtain() {
+	Type object = mThreadCache.get().pollLast();
+	if (object == null) {
+		object = mShared.poll();
+	}
+	if (object == null) {
+		object = mFactory.get();
+	}
+	return object;
+}
+
+/**
+ * Same as {@link #obtain()}, so that the pool can be used as a factory
+ * @return pooled or new object
+ */
+@Override
+public Type get() {
+	return obtain();
+}
+
+/**
+ * Return an object to the pool. The object must not be used after this
+ * @param object the object to return, resets it if the pool has a resetter
+ */
+public void free(Type object) {
+	if (object == null) {
+		return;
+	}
+
+	if (mResetter != null) {
+		mResetter.accept(object);
+	}
+
+	ArrayDeque<Type> threadCache = mThreadCache.get();
+	if (threadCache.size() < mThreadCapacity) {
+		threadCache.addLast(object);
+	} else {
+		mShared.offer(object);
+	}
+}
+
+/**
+ * Return all objects to the pool
+ * @param objects the objects to return
+ */
+public void freeAll(Type[] objects) {
+	for (Type object : objects) {
+		free(object);
+	}
+}
+
+/**
+ * @return approximate number of objects in the shared buffer (excluding thread caches)
+ */
+public int getSharedCount() {
+	return mShared.size();
+}
+}
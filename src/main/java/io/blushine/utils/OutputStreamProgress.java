@@ -2,18 +2,20 @@ package io.blushine.utils;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Wrapper for an output stream with progress
+ * Wrapper for an output stream with progress. By default an event is sent for every write, use
+ * {@link #setMinBytesDelta(long)}, {@link #setMinInterval(long, TimeUnit)} and {@link
+ * #setPercentageStep(float)} to throttle the events. The event for the last byte (or for closing
+ * the stream if the total is unknown) is always sent.
+ * @see ProgressReporter
  */
 public class OutputStreamProgress extends OutputStream {
-private static final EventBus mEventBus = EventBus.getInstance();
 /** Original output stream */
 private final OutputStream mOutstream;
-/** Total bytes */
-private final long mcTotalBytes;
-/** Total bytes written */
-private long mcWrittenBytes = 0;
+/** Counts written bytes and sends the events */
+private final ProgressReporter mProgress;
 
 /**
  * @param outputStream original output stream to wrap
@@ -27,29 +29,71 @@ public OutputStreamProgress(OutputStream outputStream) {
  * @param cTotalBytes total byte count, -1 if not known
  */
 public OutputStreamProgress(OutputStream outputStream, Long cTotalBytes) {
+	this(outputStream, new ProgressReporter(cTotalBytes));
+}
+
+/**
+ * @param outputStream original output stream to wrap
+ * @param cTotalBytes total byte count, -1 if not known
+ * @param listener gets the number of written bytes instead of the {@link EventBus}
+ */
+public OutputStreamProgress(OutputStream outputStream, long cTotalBytes, ProgressListener listener) {
+	this(outputStream, new ProgressReporter(cTotalBytes, listener));
+}
+
+/**
+ * @param outputStream original output stream to wrap
+ * @param progress counts the written bytes
+ */
+private OutputStreamProgress(OutputStream outputStream, ProgressReporter progress) {
 	mOutstream = outputStream;
-	mcTotalBytes = cTotalBytes;
+	mProgress = progress;
+}
+
+/**
+ * Only send an event when at least this many bytes have been written since the last event
+ * @param minBytesDelta minimum number of bytes between events, 0 to disable
+ */
+public void setMinBytesDelta(long minBytesDelta) {
+	mProgress.setMinDelta(minBytesDelta);
+}
+
+/**
+ * Only send an event when at least this much time has passed since the last event. The time is
+ * only checked when the other throttling conditions are met, so combine with {@link
+ * #setMinBytesDelta(long)} to avoid reading the clock on every write.
+ * @param minInterval minimum time between events, 0 to disable
+ * @param unit unit of minInterval
+ */
+public void setMinInterval(long minInterval, TimeUnit unit) {
+	mProgress.setMinInterval(minInterval, unit);
+}
+
+/**
+ * Only send an event when the progress has increased this many percent since the last event. Has
+ * no effect if the total is unknown.
+ * @param percentageStep minimum percentage between events, 0 to disable
+ */
+public void setPercentageStep(float percentageStep) {
+	mProgress.setPercentageStep(percentageStep);
 }
 
 @Override
 public void write(int b) throws IOException {
 	mOutstream.write(b);
-	mcWrittenBytes++;
-	sendWriteEvent();
+	mProgress.add(1);
 }
 
 @Override
 public void write(byte[] b) throws IOException {
 	mOutstream.write(b);
-	mcWrittenBytes += b.length;
-	sendWriteEvent();
+	mProgress.add(b.length);
 }
 
 @Override
 public void write(byte[] b, int off, int len) throws IOException {
 	mOutstream.write(b, off, len);
-	mcWrittenBytes += len;
-	sendWriteEvent();
+	mProgress.add(len);
 }
 
 @Override
@@ -57,15 +101,12 @@ public void flush() throws IOException {
 	mOutstream.flush();
 }
 
+/**
+ * Closes the original stream and sends the final event if it hasn't been sent already
+ */
 @Override
 public void close() throws IOException {
 	mOutstream.close();
-}
-
-/**
- * Send write event to listeners
- */
-private void sendWriteEvent() {
-	mEventBus.post(new ProgressEvent(mcWrittenBytes, mcTotalBytes));
+	mProgress.finish();
 }
 }
@@ -1,35 +1,112 @@
 package io.blushine.utils;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Measures how long time things take
+ * Measures how long time things take.
+ * <p>
+ * Besides the single-threaded start/stop/intermediate times the profiler can measure nested spans
+ * from any number of threads:
+ * <pre>
+ * try (Profiler.Span span = profiler.span("parse")) {
+ *     ...
+ * }
+ * </pre>
+ * Each thread has its own stack of spans, and the time of each span is added to a shared tree of
+ * sections (one per path of span names) without locks. Opening and closing a span only reads
+ * {@link System#nanoTime()} and adds to a few counters, nothing is allocated once a thread has
+ * used a path. Spans must be closed in the reverse order they were opened, which try-with-resources
+ * ensures.
+ * <p>
+ * In recording mode ({@link #setRecording(boolean)}) the profiler is meant to be run many times.
+ * The total time, the time of each intermediate section and the time of each span are fed into a
+ * {@link LatencyHistogram} per section, and the report shows the distribution (p50, p90, p99,
+ * p99.9 and max) instead of the last run. Intermediate times are then not stored, so recording
+ * doesn't allocate once every section has been seen. Profilers of different threads or intervals
+ * can be combined with {@link #merge(Profiler)}.
+ * <p>
+ * With {@link #setResourceAccounting(boolean)} each section also measures the CPU time of the
+ * thread and the bytes it allocated, when the JVM supports it, so that CPU-bound sections can be
+ * told apart from blocked or allocating ones.
  */
 public class Profiler {
 
 private static final DecimalFormat TIME_FORMAT = new DecimalFormat("#,###.000");
+private static final DecimalFormat BYTES_FORMAT = new DecimalFormat("#,##0.0");
 private int mPadding = 14;
 private long mStartTime;
 private long mEndTime;
 private List<TimeWrapper> mIntermediateTimes = new ArrayList<>();
+/** Time of the last intermediate stop in recording mode */
+private long mLastIntermediateTime;
+/** CPU time and allocated bytes of the thread at start, stop and the last intermediate stop */
+private long mStartCpuTime;
+private long mStartAllocatedBytes;
+private long mEndCpuTime;
+private long mEndAllocatedBytes;
+private long mLastCpuTime;
+private long mLastAllocatedBytes;
+private volatile boolean mSpansEnabled = true;
+private volatile boolean mRecording = false;
+private volatile boolean mResourceAccounting = false;
+/** Resource accounting of the current run, set when it's started */
+private boolean mRunResourceAccounting = false;
+/** Root of the span tree, replaced on reset */
+private volatile SpanNode mSpanRoot = new SpanNode(null);
+/** Recorded total time (the root) and intermediate sections (the children), replaced on reset */
+private volatile SpanNode mSectionRoot = new SpanNode(null);
+/** Nothing in a stack may reference the profiler, otherwise the thread keeps the profiler alive */
+private final ThreadLocal<SpanStack> mSpanStacks = ThreadLocal.withInitial(SpanStack::new);
 
 /**
- * Start measuring the time. This automatically resets the profiler
+ * Start measuring the time. This automatically resets the times of the previous run, the spans and
+ * recorded sections are kept until {@link #reset()} is called.
  */
 public void start() {
-	reset();
+	resetRun();
+	mRunResourceAccounting = mResourceAccounting;
+	if (mRunResourceAccounting) {
+		mStartCpuTime = ThreadResources.getCpuTime();
+		mStartAllocatedBytes = ThreadResources.getAllocatedBytes();
+		mLastCpuTime = mStartCpuTime;
+		mLastAllocatedBytes = mStartAllocatedBytes;
+	}
 	mStartTime = System.nanoTime();
+	mLastIntermediateTime = mStartTime;
 }
 
 /**
- * Reset the profiler
+ * Reset the profiler, including the spans and recorded sections. Spans that are open while
+ * resetting are not added to the new spans.
  */
 public void reset() {
+	resetRun();
+	mSpanRoot = new SpanNode(null);
+	mSectionRoot = new SpanNode(null);
+}
+
+/**
+ * Reset the times of the current run
+ */
+private void resetRun() {
 	mStartTime = 0;
 	mEndTime = 0;
+	mStartCpuTime = 0;
+	mStartAllocatedBytes = 0;
+	mEndCpuTime = 0;
+	mEndAllocatedBytes = 0;
+	mRunResourceAccounting = false;
 	mIntermediateTimes.clear();
 }
 
@@ -38,6 +115,14 @@ public void reset() {
  */
 public void stop() {
 	mEndTime = System.nanoTime();
+	if (mRunResourceAccounting) {
+		mEndCpuTime = ThreadResources.getCpuTime();
+		mEndAllocatedBytes = ThreadResources.getAllocatedBytes();
+	}
+	if (mRecording) {
+		mSectionRoot.record(mEndTime - mStartTime, true);
+		mSectionRoot.recordResources(mEndCpuTime - mStartCpuTime, mEndAllocatedBytes - mStartAllocatedBytes);
+	}
 }
 
 /**
@@ -45,7 +130,129 @@ public void stop() {
  * @param name the name of the point
  */
 public void addIntermediateTime(String name) {
-	mIntermediateTimes.add(new TimeWrapper(name));
+	// Read the time before allocating anything
+	long time = System.nanoTime();
+	long cpuTime = 0;
+	long allocatedBytes = 0;
+	if (mRunResourceAccounting) {
+		long currentCpuTime = ThreadResources.getCpuTime();
+		long currentAllocatedBytes = ThreadResources.getAllocatedBytes();
+		cpuTime = currentCpuTime - mLastCpuTime;
+		allocatedBytes = currentAllocatedBytes - mLastAllocatedBytes;
+		mLastCpuTime = currentCpuTime;
+		mLastAllocatedBytes = currentAllocatedBytes;
+	}
+
+	if (mRecording) {
+		SpanNode section = mSectionRoot.getChild(name);
+		section.record(time - mLastIntermediateTime, true);
+		section.recordResources(cpuTime, allocatedBytes);
+		mLastIntermediateTime = time;
+	} else {
+		mIntermediateTimes.add(new TimeWrapper(name, time, cpuTime, allocatedBytes));
+	}
+}
+
+/**
+ * Enable or disable measuring the CPU time and allocated bytes of each section, span and the total
+ * time. Only takes effect for measurements that start after this is called. Reading these costs
+ * more than reading the time, about a microsecond each. Ignored if the JVM supports neither.
+ * @param resourceAccounting true to measure CPU time and allocated bytes
+ */
+public void setResourceAccounting(boolean resourceAccounting) {
+	mResourceAccounting = resourceAccounting && (ThreadResources.isCpuTimeSupported() || ThreadResources.isAllocatedBytesSupported());
+}
+
+/**
+ * @return true if CPU time or allocated bytes are measured
+ */
+public boolean isResourceAccounting() {
+	return mResourceAccounting;
+}
+
+/**
+ * Enable or disable recording mode. Doesn't reset anything.
+ * @param recording true to record each section in a histogram
+ */
+public void setRecording(boolean recording) {
+	mRecording = recording;
+}
+
+/**
+ * @return true if in recording mode
+ */
+public boolean isRecording() {
+	return mRecording;
+}
+
+/**
+ * Add everything another profiler has recorded, spans and sections, to this profiler. Use it to
+ * combine profilers of several threads or intervals.
+ * @param other the profiler to add
+ */
+public void merge(Profiler other) {
+	mSectionRoot.merge(other.mSectionRoot);
+	mSpanRoot.merge(other.mSpanRoot);
+}
+
+/**
+ * @return histogram of the recorded total times, null if nothing has been recorded
+ */
+public LatencyHistogram getTotalHistogram() {
+	return mSectionRoot.mHistogram;
+}
+
+/**
+ * @param name name of an intermediate stop
+ * @return histogram of the recorded times of the section that ends at the stop, null if nothing
+ * has been recorded
+ */
+public LatencyHistogram getSectionHistogram(String name) {
+	SpanNode node = mSectionRoot.mChildrenByName.get(name);
+	return node != null ? node.mHistogram : null;
+}
+
+/**
+ * @param path names of the span and the spans it's nested in, outermost first
+ * @return histogram of the recorded times of the span, null if nothing has been recorded
+ */
+public LatencyHistogram getSpanHistogram(String... path) {
+	SpanNode node = mSpanRoot;
+	for (String name : path) {
+		node = node.mChildrenByName.get(name);
+		if (node == null) {
+			return null;
+		}
+	}
+	return node.mHistogram;
+}
+
+/**
+ * Open a span, a section nested in the spans that are open on this thread. Thread-safe.
+ * @param name name of the span, use constants so that the section can be found by identity
+ * @return the open span, close it when the section is done
+ */
+public Span span(String name) {
+	if (!mSpansEnabled) {
+		return Span.DISABLED;
+	}
+	Span span = mSpanStacks.get().push(mSpanRoot, name);
+	span.mRecording = mRecording;
+	span.mResourceAccounting = mResourceAccounting;
+	if (span.mResourceAccounting) {
+		span.mStartCpuTime = ThreadResources.getCpuTime();
+		span.mStartAllocatedBytes = ThreadResources.getAllocatedBytes();
+	}
+	span.mStartTime = System.nanoTime();
+	return span;
+}
+
+/**
+ * Enable or disable spans. When disabled {@link #span(String)} returns a span that does nothing.
+ * @param enabled true to measure spans
+ */
+public void setSpansEnabled(boolean enabled) {
+	mSpansEnabled = enabled;
 }
 
 /**
@@ -72,7 +279,34 @@ public String toString(String header) {
 
 	// Total time
 	long totalTime = mEndTime - mStartTime;
-	stringBuilder.append("Total Time: ").append(timeInHumanReadableFormat(totalTime)).append("\n");
+	stringBuilder.append("Total Time: ").append(timeInHumanReadableFormat(totalTime));
+	if (mRunResourceAccounting) {
+		stringBuilder.append(" (");
+		appendResources(stringBuilder, mEndCpuTime - mStartCpuTime, mEndAllocatedBytes - mStartAllocatedBytes);
+		stringBuilder.append(")");
+	}
+	stringBuilder.append("\n");
+
+
+	// Recorded sections
+	SpanNode sectionRoot = mSectionRoot;
+	if (sectionRoot.mHistogram != null || !sectionRoot.mChildren.isEmpty()) {
+		stringBuilder.append("Recorded:\n");
+		if (sectionRoot.mHistogram != null) {
+			stringBuilder.append("Total Time (");
+			appendPercentiles(stringBuilder, sectionRoot.mHistogram);
+			if (mResourceAccounting) {
+				stringBuilder.append(", ");
+				appendResources(stringBuilder, sectionRoot.mCpuTime.sum(), sectionRoot.mAllocatedBytes.sum());
+			}
+			stringBuilder.append(")\n");
+		}
+		long sectionsTime = 0;
+		for (SpanNode child : sectionRoot.mChildren) {
+			sectionsTime += child.mTotalTime.sum();
+		}
+		appendSpans(stringBuilder, sectionRoot, sectionsTime, "");
+	}
 
 
 	// Intermediate times
@@ -90,14 +324,108 @@ public String toString(String header) {
 		String percentageTimeString = String.format(Locale.ENGLISH, "%.2f", percentageTime);
 		stringBuilder.append(percentageTimeString).append("%    ");
 
+		// CPU time and allocated bytes
+		if (mRunResourceAccounting) {
+			appendResourceColumns(stringBuilder, intermediateTime.cpuTime, intermediateTime.allocatedBytes);
+		}
+
 		// Name
 		stringBuilder.append(intermediateTime.name).append("\n");
 	}
 
 
+	// Spans
+	SpanNode spanRoot = mSpanRoot;
+	if (!spanRoot.mChildren.isEmpty()) {
+		stringBuilder.append("Spans:\n");
+		long spansTime = 0;
+		for (SpanNode child : spanRoot.mChildren) {
+			spansTime += child.mTotalTime.sum();
+		}
+		appendSpans(stringBuilder, spanRoot, spansTime, "");
+	}
+
+
 	return stringBuilder.toString();
 }
 
+/**
+ * Append the children of a span section
+ * @param stringBuilder where to append
+ * @param node the parent section
+ * @param parentTime total time of the parent section, percentages are relative to this
+ * @param indent indentation of the children's names
+ */
+private void appendSpans(StringBuilder stringBuilder, SpanNode node, long parentTime, String indent) {
+	for (SpanNode child : node.mChildren) {
+		long time = child.mTotalTime.sum();
+		stringBuilder.append(Strings.padRight(timeInHumanReadableFormat(time), mPadding));
+
+		double percentageTime = parentTime != 0 ? ((double) time) / parentTime * 100 : 0;
+		stringBuilder.append(String.format(Locale.ENGLISH, "%.2f", percentageTime)).append("%    ");
+
+		if (mResourceAccounting) {
+			appendResourceColumns(stringBuilder, child.mCpuTime.sum(), child.mAllocatedBytes.sum());
+		}
+
+		stringBuilder.append(indent).append(child.mName).append(" (");
+		if (child.mHistogram != null) {
+			appendPercentiles(stringBuilder, child.mHistogram);
+		} else {
+			stringBuilder.append(child.mCount.sum()).append(", max ").append(timeInHumanReadableFormat(child.mMaxTime.get()));
+		}
+		stringBuilder.append(")\n");
+		appendSpans(stringBuilder, child, time, indent + "  ");
+	}
+}
+
+/**
+ * Append the CPU time and allocated bytes as padded columns, only the ones that are supported
+ * @param stringBuilder where to append
+ * @param cpuTime CPU time in nanoseconds
+ * @param allocatedBytes allocated bytes
+ */
+private void appendResourceColumns(StringBuilder stringBuilder, long cpuTime, long allocatedBytes) {
+	if (ThreadResources.isCpuTimeSupported()) {
+		stringBuilder.append(Strings.padRight("cpu " + timeInHumanReadableFormat(cpuTime), mPadding + 4));
+	}
+	if (ThreadResources.isAllocatedBytesSupported()) {
+		stringBuilder.append(Strings.padRight("alloc " + bytesInHumanReadableFormat(allocatedBytes), mPadding + 6));
+	}
+}
+
+/**
+ * Append the CPU time and allocated bytes, only the ones that are supported
+ * @param stringBuilder where to append
+ * @param cpuTime CPU time in nanoseconds
+ * @param allocatedBytes allocated bytes
+ */
+private static void appendResources(StringBuilder stringBuilder, long cpuTime, long allocatedBytes) {
+	if (ThreadResources.isCpuTimeSupported()) {
+		stringBuilder.append("cpu ").append(timeInHumanReadableFormat(cpuTime));
+	}
+	if (ThreadResources.isAllocatedBytesSupported()) {
+		if (ThreadResources.isCpuTimeSupported()) {
+			stringBuilder.append(", ");
+		}
+		stringBuilder.append("alloc ").append(bytesInHumanReadableFormat(allocatedBytes));
+	}
+}
+
+/**
+ * Append the count, percentiles and max of a histogram
+ * @param stringBuilder where to append
+ * @param histogram recorded times
+ */
+private static void appendPercentiles(StringBuilder stringBuilder, LatencyHistogram histogram) {
+	stringBuilder.append(histogram.getCount());
+	stringBuilder.append(", p50 ").append(timeInHumanReadableFormat(histogram.getValueAtPercentile(50)));
+	stringBuilder.append(", p90 ").append(timeInHumanReadableFormat(histogram.getValueAtPercentile(90)));
+	stringBuilder.append(", p99 ").append(timeInHumanReadableFormat(histogram.getValueAtPercentile(99)));
+	stringBuilder.append(", p99.9 ").append(timeInHumanReadableFormat(histogram.getValueAtPercentile(99.9)));
+	stringBuilder.append(", max ").append(timeInHumanReadableFormat(histogram.getMax()));
+}
+
 /**
  * Get the time in human-readable format. Only microseconds will be shown, never the granularity of
  * nano-seconds
@@ -111,6 +439,14 @@ private static String timeInHumanReadableFormat(long nanoseconds) {
 	return time;
 }
 
+/**
+ * Get bytes in human-readable format, always in kilobytes
+ * @param bytes number of bytes
+ */
+private static String bytesInHumanReadableFormat(long bytes) {
+	return BYTES_FORMAT.format(bytes / 1024.0) + "KB";
+}
+
 /**
  * Change the padding (total number of characters) in the intermediate times
  * @param padding total number of characters in intermediate times before the name
@@ -124,10 +460,273 @@ public void setPadding(int padding) {
  */
 private static class TimeWrapper {
 	private String name;
-	private long time = System.nanoTime();
+	private long time;
+	/** CPU time and allocated bytes since the previous stop */
+	private long cpuTime;
+	private long allocatedBytes;
 
-	private TimeWrapper(String name) {
+	private TimeWrapper(String name, long time, long cpuTime, long allocatedBytes) {
 		this.name = name;
+		this.time = time;
+		this.cpuTime = cpuTime;
+		this.allocatedBytes = allocatedBytes;
+	}
+}
+
+/**
+ * Reads the CPU time and allocated bytes of the current thread, if the JVM supports it
+ */
+private static class ThreadResources {
+	private static final ThreadMXBean THREAD_BEAN;
+	private static final boolean CPU_TIME_SUPPORTED;
+	private static final boolean ALLOCATED_BYTES_SUPPORTED;
+
+	static {
+		ThreadMXBean threadBean = null;
+		boolean cpuTimeSupported = false;
+		boolean allocatedBytesSupported = false;
+		try {
+			threadBean = ManagementFactory.getThreadMXBean();
+			cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled();
+			allocatedBytesSupported = threadBean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported() && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemoryEnabled();
+		} catch (LinkageError | UnsupportedOperationException | SecurityException e) {
+			// Not available on this JVM, keep what was found
+		}
+		THREAD_BEAN = threadBean;
+		CPU_TIME_SUPPORTED = cpuTimeSupported;
+		ALLOCATED_BYTES_SUPPORTED = allocatedBytesSupported;
+	}
+
+	/**
+	 * @return true if {@link #getCpuTime()} is supported
+	 */
+	private static boolean isCpuTimeSupported() {
+		return CPU_TIME_SUPPORTED;
+	}
+
+	/**
+	 * @return true if {@link #getAllocatedBytes()} is supported
+	 */
+	private static boolean isAllocatedBytesSupported() {
+		return ALLOCATED_BYTES_SUPPORTED;
+	}
+
+	/**
+	 * @return CPU time of the current thread in nanoseconds, 0 if not supported
+	 */
+	private static long getCpuTime() {
+		return CPU_TIME_SUPPORTED ? THREAD_BEAN.getCurrentThreadCpuTime() : 0;
+	}
+
+	/**
+	 * @return bytes allocated by the current thread, 0 if not supported
+	 */
+	private static long getAllocatedBytes() {
+		return ALLOCATED_BYTES_SUPPORTED ? ((com.sun.management.ThreadMXBean) THREAD_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+	}
+}
+
+/**
+ * An open span. Close it when the section is done. Span objects are reused by the thread that
+ * opened them, so don't use a span after it has been closed.
+ */
+public static class Span implements AutoCloseable {
+	/** Returned when spans are disabled */
+	private static final Span DISABLED = new Span(null);
+	private final SpanStack mStack;
+	private SpanNode mNode = null;
+	private long mStartTime;
+	private boolean mRecording;
+	private boolean mResourceAccounting;
+	private long mStartCpuTime;
+	private long mStartAllocatedBytes;
+	/** Last parent and name this span was opened with, and the section it resolved to */
+	private SpanNode mCachedParent = null;
+	private String mCachedName = null;
+	private SpanNode mCachedNode = null;
+
+	private Span(SpanStack stack) {
+		mStack = stack;
+	}
+
+	/**
+	 * Close the span and add its time to the section
+	 * @throws IllegalStateException if a span opened after this one is still open or the span has
+	 * already been closed, nothing is recorded then
+	 */
+	@Override
+	public void close() {
+		if (mStack == null) {
+			return;
+		}
+		long elapsed = System.nanoTime() - mStartTime;
+		// Validate the nesting before anything is recorded
+		mStack.pop(this);
+		mNode.record(elapsed, mRecording);
+		if (mResourceAccounting) {
+			mNode.recordResources(ThreadResources.getCpuTime() - mStartCpuTime, ThreadResources.getAllocatedBytes() - mStartAllocatedBytes);
+		}
+	}
+}
+
+/**
+ * The open spans of a thread. Span objects are reused for each depth.
+ */
+private static class SpanStack {
+	private Span[] mSpans = new Span[8];
+	private int mDepth = 0;
+
+	/**
+	 * Open a span
+	 * @param root root of the span tree, used if no span is open
+	 * @param name name of the span
+	 * @return the span for the new depth
+	 */
+	private Span push(SpanNode root, String name) {
+		SpanNode parent = mDepth == 0 ? root : mSpans[mDepth - 1].mNode;
+		if (mDepth == mSpans.length) {
+			mSpans = Arrays.copyOf(mSpans, mSpans.length * 2);
+		}
+		Span span = mSpans[mDepth];
+		if (span == null) {
+			span = new Span(this);
+			mSpans[mDepth] = span;
+		}
+		mDepth++;
+
+		// Usually the same section as the last time at this depth
+		if (span.mCachedParent != parent || (span.mCachedName != name && !span.mCachedName.equals(name))) {
+			span.mCachedParent = parent;
+			span.mCachedName = name;
+			span.mCachedNode = parent.getChild(name);
+		}
+		span.mNode = span.mCachedNode;
+		return span;
+	}
+
+	/**
+	 * Close the innermost span
+	 * @param span the span that is closed
+	 * @throws IllegalStateException if it isn't the innermost span
+	 */
+	private void pop(Span span) {
+		if (mDepth == 0 || mSpans[mDepth - 1] != span) {
+			throw new IllegalStateException("Spans must be closed in the reverse order they were opened");
+		}
+		mDepth--;
+	}
+}
+
+/**
+ * A section in the span tree, the aggregated times of all spans with the same path
+ */
+private static class SpanNode {
+	private final String mName;
+	private final ConcurrentMap<String, SpanNode> mChildrenByName = new ConcurrentHashMap<>();
+	/** Children in the order they were first opened */
+	private final List<SpanNode> mChildren = new CopyOnWriteArrayList<>();
+	private final LongAdder mCount = new LongAdder();
+	private final LongAdder mTotalTime = new LongAdder();
+	private final AtomicLong mMaxTime = new AtomicLong();
+	private final LongAdder mCpuTime = new LongAdder();
+	private final LongAdder mAllocatedBytes = new LongAdder();
+	/** Recorded times, created the first time the section is recorded in recording mode */
+	private volatile LatencyHistogram mHistogram = null;
+
+	private SpanNode(String name) {
+		mName = name;
+	}
+
+	/**
+	 * Get or create a child section
+	 * @param name name of the child
+	 * @return the child section
+	 */
+	private SpanNode getChild(String name) {
+		SpanNode child = mChildrenByName.get(name);
+		if (child == null) {
+			synchronized (this) {
+				child = mChildrenByName.get(name);
+				if (child == null) {
+					child = new SpanNode(name);
+					mChildrenByName.put(name, child);
+					mChildren.add(child);
+				}
+			}
+		}
+		return child;
+	}
+
+	/**
+	 * Add the time of a closed span or section
+	 * @param time how long the span was open
+	 * @param recording true to also add the time to the histogram
+	 */
+	private void record(long time, boolean recording) {
+		mCount.increment();
+		mTotalTime.add(time);
+		updateMaxTime(time);
+		if (recording) {
+			getHistogram().record(time);
+		}
+	}
+
+	/**
+	 * Add the CPU time and allocated bytes of a closed span or section
+	 * @param cpuTime CPU time in nanoseconds
+	 * @param allocatedBytes allocated bytes
+	 */
+	private void recordResources(long cpuTime, long allocatedBytes) {
+		mCpuTime.add(cpuTime);
+		mAllocatedBytes.add(allocatedBytes);
+	}
+
+	/**
+	 * @param time new max time if it's higher than the current
+	 */
+	private void updateMaxTime(long time) {
+		long max;
+		while (time > (max = mMaxTime.get())) {
+			if (mMaxTime.compareAndSet(max, time)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return the histogram, created if it doesn't exist
+	 */
+	private LatencyHistogram getHistogram() {
+		LatencyHistogram histogram = mHistogram;
+		if (histogram == null) {
+			synchronized (this) {
+				histogram = mHistogram;
+				if (histogram == null) {
+					histogram = new LatencyHistogram();
+					mHistogram = histogram;
+				}
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Add the times of another section and its children
+	 * @param other section with the same path in another profiler
+	 */
+	private void merge(SpanNode other) {
+		mCount.add(other.mCount.sum());
+		mTotalTime.add(other.mTotalTime.sum());
+		updateMaxTime(other.mMaxTime.get());
+		mCpuTime.add(other.mCpuTime.sum());
+		mAllocatedBytes.add(other.mAllocatedBytes.sum());
+		LatencyHistogram otherHistogram = other.mHistogram;
+		if (otherHistogram != null) {
+			getHistogram().merge(otherHistogram);
+		}
+		for (SpanNode otherChild : other.mChildren) {
+			getChild(otherChild.mName).merge(otherChild);
+		}
 	}
 }
 }
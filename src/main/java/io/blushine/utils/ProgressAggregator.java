@@ -0,0 +1,342 @@
+package io.blushine.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Combines the progress of many parts (e.g. the streams of a multipart upload) into one progress.
+ * Parts can be updated from any thread, each update only adds to a {@link LongAdder}. Instead of
+ * every part posting its own events, a sampler periodically posts one {@link AggregatedEvent} with
+ * the combined progress, optionally with the progress of every part. Events are only posted when
+ * the progress has changed.
+ * <p>
+ * The sampler runs on its own thread (or the given executor), so the {@link EventBus} must accept
+ * posts from that thread, e.g. an asynchronous bus. If a post from the sampler fails, e.g. because
+ * the bus only accepts posts from the main thread, the exception is reported to the bus's {@link
+ * EventBus.ErrorListener} and the sampler keeps running. In that case don't start the sampler and
+ * call {@link #sample()} from the right thread instead.
+ */
+public class ProgressAggregator implements Closeable {
+private static final EventBus mEventBus = EventBus.getInstance();
+/** Total parts, -1 to calculate it from the parts */
+private final long mcTotal;
+private final List<Part> mParts = new CopyOnWriteArrayList<>();
+private final ProgressRate mRate = new ProgressRate();
+private volatile boolean mBreakdown = false;
+/** Completed parts when the last event was posted, -1 if no event has been posted */
+private long mcLastSample = -1;
+private ScheduledExecutorService mOwnExecutor = null;
+private ScheduledFuture<?> mSampler = null;
+
+/**
+ * Create an aggregator where the total is the sum of the totals of all parts
+ */
+public ProgressAggregator() {
+	this(-1);
+}
+
+/**
+ * Create an aggregator
+ * @param cTotal total for all parts, -1 to use the sum of the totals of all parts
+ */
+public ProgressAggregator(long cTotal) {
+	mcTotal = cTotal;
+}
+
+/**
+ * Add a new part
+ * @param cTotal total for the part, -1 if not known
+ * @return the new part, add its progress to it
+ */
+public Part newPart(long cTotal) {
+	Part part = new Part(cTotal);
+	mParts.add(part);
+	return part;
+}
+
+/**
+ * Wrap an output stream as a new part. The stream doesn't post any events itself, its throttling
+ * only controls how often the written bytes are added to the part. Closing the stream finishes the
+ * part.
+ * @param outputStream original output stream to wrap
+ * @param cTotalBytes total byte count of the part, -1 if not known
+ * @return output stream that adds the written bytes to the new part
+ */
+public OutputStreamProgress wrap(OutputStream outputStream, long cTotalBytes) {
+	final Part part = newPart(cTotalBytes);
+	return new OutputStreamProgress(outputStream, cTotalBytes, new ProgressListener() {
+		private long mcAdded = 0;
+
+		@Override
+		public void onProgress(long complete, long total) {
+			part.add(complete - mcAdded);
+			mcAdded = complete;
+		}
+	}) {
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				part.finish();
+			}
+		}
+	};
+}
+
+/**
+ * Include the progress of every part in the events
+ * @param breakdown true to include the progress of every part
+ */
+public void setBreakdown(boolean breakdown) {
+	mBreakdown = breakdown;
+}
+
+/**
+ * @return number of completed parts in all parts
+ */
+public long getComplete() {
+	long cComplete = 0;
+	for (Part part : mParts) {
+		cComplete += part.getComplete();
+	}
+	return cComplete;
+}
+
+/**
+ * @return total for all parts, -1 if not known
+ */
+public long getTotal() {
+	if (mcTotal != -1) {
+		return mcTotal;
+	}
+
+	long cTotal = 0;
+	for (Part part : mParts) {
+		if (part.getTotal() < 0) {
+			return -1;
+		}
+		cTotal += part.getTotal();
+	}
+	return cTotal;
+}
+
+/**
+ * Start posting the combined progress periodically on a new daemon thread
+ * @param interval time between samples
+ * @param unit unit of interval
+ */
+public synchronized void start(long interval, TimeUnit unit) {
+	if (mSampler != null) {
+		throw new IllegalStateException("Sampler already started");
+	}
+
+	ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "ProgressAggregator");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	try {
+		start(executor, interval, unit);
+	} catch (RuntimeException e) {
+		executor.shutdown();
+		throw e;
+	}
+	mOwnExecutor = executor;
+}
+
+/**
+ * Start posting the combined progress periodically
+ * @param executor executor to run the sampler on
+ * @param interval time between samples
+ * @param unit unit of interval
+ */
+public synchronized void start(ScheduledExecutorService executor, long interval, TimeUnit unit) {
+	if (mSampler != null) {
+		throw new IllegalStateException("Sampler already started");
+	}
+	mSampler = executor.scheduleAtFixedRate(new Runnable() {
+		@Override
+		public void run() {
+			sample(true);
+		}
+	}, interval, interval, unit);
+}
+
+/**
+ * Post the combined progress if it has changed since the last event
+ */
+public void sample() {
+	sample(false);
+}
+
+/**
+ * Post the combined progress if it has changed since the last event
+ * @param reportErrors true to report exceptions from the post to the bus's error listener instead
+ * of throwing them, so that the sampler isn't cancelled
+ */
+private synchronized void sample(boolean reportErrors) {
+	long cComplete = 0;
+	long cTotal = mcTotal == -1 ? 0 : mcTotal;
+	boolean breakdown = mBreakdown;
+	int cParts = mParts.size();
+	long[] partsComplete = breakdown ? new long[cParts] : null;
+	long[] partsTotal = breakdown ? new long[cParts] : null;
+
+	// The list may grow while sampling, only use the parts that were counted
+	for (int i = 0; i < cParts; ++i) {
+		Part part = mParts.get(i);
+		long cPartComplete = part.getComplete();
+		cComplete += cPartComplete;
+		if (mcTotal == -1 && cTotal != -1) {
+			cTotal = part.getTotal() < 0 ? -1 : cTotal + part.getTotal();
+		}
+		if (breakdown) {
+			partsComplete[i] = cPartComplete;
+			partsTotal[i] = part.getTotal();
+		}
+	}
+
+	if (cComplete == mcLastSample) {
+		return;
+	}
+	mcLastSample = cComplete;
+	double rate = mRate.update(cComplete, System.nanoTime());
+	AggregatedEvent event = new AggregatedEvent(cComplete, cTotal, rate, partsComplete, partsTotal);
+	try {
+		mEventBus.post(event);
+	} catch (RuntimeException e) {
+		if (!reportErrors) {
+			throw e;
+		}
+		mEventBus.getErrorListener().onError(e, event, null);
+	}
+}
+
+/**
+ * Stop the sampler and post the final progress if it has changed
+ */
+@Override
+public synchronized void close() {
+	if (mSampler != null) {
+		mSampler.cancel(false);
+		mSampler = null;
+	}
+	if (mOwnExecutor != null) {
+		mOwnExecutor.shutdown();
+		mOwnExecutor = null;
+	}
+	sample();
+}
+
+/**
+ * Progress of one part. Can be updated from any thread. The part never posts any events, the
+ * aggregator decides when events are posted.
+ */
+public static class Part {
+	private final LongAdder mcComplete = new LongAdder();
+	/** Total for the part, -1 if not known */
+	private volatile long mcTotal;
+
+	/**
+	 * @param cTotal total for the part, -1 if not known
+	 */
+	private Part(long cTotal) {
+		mcTotal = cTotal;
+	}
+
+	/**
+	 * Add completed parts
+	 * @param count number of parts that were completed
+	 */
+	public void add(long count) {
+		mcComplete.add(count);
+	}
+
+	/**
+	 * Mark the part as finished. If the total wasn't known it's set to the completed count.
+	 */
+	public void finish() {
+		if (mcTotal < 0) {
+			mcTotal = getComplete();
+		}
+	}
+
+	/**
+	 * @return number of completed parts
+	 */
+	public long getComplete() {
+		return mcComplete.sum();
+	}
+
+	/**
+	 * @return total for the part, -1 if not known
+	 */
+	public long getTotal() {
+		return mcTotal;
+	}
+}
+
+/**
+ * Combined progress of all parts
+ */
+public static class AggregatedEvent extends ProgressEvent {
+	private final long[] mPartsComplete;
+	private final long[] mPartsTotal;
+
+	/**
+	 * @param complete completed parts in all parts
+	 * @param total total for all parts, -1 if not known
+	 * @param rate smoothed number of parts completed per second
+	 * @param partsComplete completed parts of each part, null if no breakdown
+	 * @param partsTotal total of each part, null if no breakdown
+	 */
+	private AggregatedEvent(long complete, long total, double rate, long[] partsComplete, long[] partsTotal) {
+		super(complete, total, null, rate);
+		mPartsComplete = partsComplete;
+		mPartsTotal = partsTotal;
+	}
+
+	/**
+	 * @return true if the event includes the progress of every part
+	 */
+	public boolean hasBreakdown() {
+		return mPartsComplete != null;
+	}
+
+	/**
+	 * @return number of parts in the breakdown, 0 if no breakdown
+	 */
+	public int getPartCount() {
+		return mPartsComplete != null ? mPartsComplete.length : 0;
+	}
+
+	/**
+	 * @param index index of the part, in the order they were created
+	 * @return completed parts of the part
+	 */
+	public long getPartComplete(int index) {
+		return mPartsComplete[index];
+	}
+
+	/**
+	 * @param index index of the part, in the order they were created
+	 * @return total of the part, -1 if not known
+	 */
+	public long getPartTotal(int index) {
+		return mPartsTotal[index];
+	}
+}
+}
@@ -1,5 +1,7 @@
 package io.blushine.utils;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Fired when a progress bar (or something else) should be updated.
  */
@@ -7,6 +9,7 @@ public class ProgressEvent {
 private long mComplete;
 private long mTotal;
 private String mMessage;
+private double mRate;
 
 /**
  * Create a new progress event
@@ -24,9 +27,35 @@ public ProgressEvent(long complete, long total) {
  * @param message an optional message for the progress
  */
 public ProgressEvent(long complete, long total, String message) {
+	this(complete, total, message, Double.NaN);
+}
+
+/**
+ * Create a new progress event
+ * @param complete how many parts have been completed
+ * @param total total number of parts to process
+ * @param message an optional message for the progress
+ * @param rate smoothed number of parts completed per second, NaN if not known
+ */
+public ProgressEvent(long complete, long total, String message, double rate) {
+	mComplete = complete;
+	mTotal = total;
+	mMessage = message;
+	mRate = rate;
+}
+
+/**
+ * Update all values, only used by {@link MutableProgressEvent}
+ * @param complete how many parts have been completed
+ * @param total total number of parts to process
+ * @param message an optional message for the progress
+ * @param rate smoothed number of parts completed per second, NaN if not known
+ */
+void set(long complete, long total, String message, double rate) {
 	mComplete = complete;
 	mTotal = total;
 	mMessage = message;
+	mRate = rate;
 }
 
 /**
@@ -67,4 +96,27 @@ public float getPercentage() {
 		return 0;
 	}
 }
+
+/**
+ * @return smoothed number of parts completed per second (e.g. bytes/s), NaN if not known
+ */
+public double getRate() {
+	return mRate;
+}
+
+/**
+ * Estimated time until the progress is complete, calculated from {@link #getRate()}
+ * @param unit unit of the returned time
+ * @return estimated time left truncated to the unit, -1 if it can't be estimated
+ */
+public long getEta(TimeUnit unit) {
+	if (isComplete()) {
+		return 0;
+	}
+	if (mTotal < 0 || Double.isNaN(mRate) || mRate <= 0) {
+		return -1;
+	}
+	double secondsLeft = (mTotal - mComplete) / mRate;
+	return unit.convert((long) (secondsLeft * 1e9), TimeUnit.NANOSECONDS);
+}
 }
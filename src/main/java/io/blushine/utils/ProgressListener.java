@@ -0,0 +1,15 @@
+package io.blushine.utils;
+
+/**
+ * Listens to progress without allocating an event for each update
+ * @see EventBusProgressListener
+ */
+@FunctionalInterface
+public interface ProgressListener {
+	/**
+	 * Called when the progress has been updated
+	 * @param complete how many parts have been completed
+	 * @param total total number of parts to process, -1 if not known
+	 */
+	void onProgress(long complete, long total);
+}
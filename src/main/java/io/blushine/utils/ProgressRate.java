@@ -0,0 +1,47 @@
+package io.blushine.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exponentially smoothed rate of progress. Newer samples weigh more, samples older than a few
+ * seconds hardly matter. Not thread-safe.
+ */
+class ProgressRate {
+/** Time constant for smoothing the rate */
+private static final long SMOOTHING_NANOS = TimeUnit.SECONDS.toNanos(3);
+private long mLastTime;
+private long mcLastComplete = 0;
+/** Smoothed parts per second, NaN until the first update */
+private double mRate = Double.NaN;
+
+/**
+ * Start measuring from now
+ */
+ProgressRate() {
+	mLastTime = System.nanoTime();
+}
+
+/**
+ * Update the rate
+ * @param cComplete total number of completed parts
+ * @param now current time from {@link System#nanoTime()}
+ * @return smoothed parts per second, NaN if not known yet
+ */
+double update(long cComplete, long now) {
+	long elapsed = now - mLastTime;
+	if (elapsed <= 0) {
+		return mRate;
+	}
+
+	double rate = (cComplete - mcLastComplete) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+	if (Double.isNaN(mRate)) {
+		mRate = rate;
+	} else {
+		double alpha = 1 - Math.exp(-(double) elapsed / SMOOTHING_NANOS);
+		mRate += alpha * (rate - mRate);
+	}
+	mLastTime = now;
+	mcLastComplete = cComplete;
+	return mRate;
+}
+}
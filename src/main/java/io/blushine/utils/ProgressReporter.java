@@ -0,0 +1,164 @@
+package io.blushine.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts progress and sends throttled updates to a {@link ProgressListener}. Adding progress only
+ * increments a counter and compares it to a precomputed threshold; everything else is done when an
+ * update is sent, and nothing is allocated unless the listener does. By default the updates are
+ * posted as {@link ProgressEvent}s to the {@link EventBus}, and an update is sent for every call
+ * to {@link #add(long)}. The update that reaches the total (or {@link #finish()} if the total is
+ * unknown) is always sent. Not thread-safe.
+ */
+public class ProgressReporter {
+private final ProgressListener mListener;
+/** Total parts, -1 if not known */
+private final long mcTotal;
+/** Completed parts */
+private long mcComplete = 0;
+/** Send the next event when this many parts have been completed */
+private long mcNextEvent = 0;
+/** Completed parts when the last event was sent, -1 if no event has been sent */
+private long mcLastEvent = -1;
+/** When the last event was sent, from {@link System#nanoTime()}, only updated for time throttling */
+private long mLastEventTime;
+private long mMinDelta = 0;
+private long mMinIntervalNanos = 0;
+private float mPercentageStep = 0;
+
+/**
+ * Create a reporter that posts {@link ProgressEvent}s to the {@link EventBus}
+ * @param cTotal total number of parts, -1 if not known
+ */
+public ProgressReporter(long cTotal) {
+	this(cTotal, new EventBusProgressListener());
+}
+
+/**
+ * Create a reporter
+ * @param cTotal total number of parts, -1 if not known
+ * @param listener gets the updates
+ */
+public ProgressReporter(long cTotal, ProgressListener listener) {
+	if (listener == null) {
+		throw new IllegalArgumentException("listener is null");
+	}
+	mcTotal = cTotal;
+	mListener = listener;
+	mLastEventTime = System.nanoTime();
+}
+
+/**
+ * Add completed parts, sends an event if the throttling allows it
+ * @param count number of parts that were completed
+ */
+public void add(long count) {
+	mcComplete += count;
+	if (mcComplete >= mcNextEvent) {
+		sendEvent();
+	}
+}
+
+/**
+ * Send the final event if it hasn't been sent already
+ */
+public void finish() {
+	if (mcLastEvent != mcComplete) {
+		postEvent();
+	}
+}
+
+/**
+ * @return number of completed parts
+ */
+public long getComplete() {
+	return mcComplete;
+}
+
+/**
+ * @return total number of parts, -1 if not known
+ */
+public long getTotal() {
+	return mcTotal;
+}
+
+/**
+ * Only send an event when at least this many parts have been completed since the last event
+ * @param minDelta minimum number of parts between events, 0 to disable
+ */
+public void setMinDelta(long minDelta) {
+	mMinDelta = minDelta;
+	updateNextEvent(Math.max(mcLastEvent, 0));
+}
+
+/**
+ * Only send an event when at least this much time has passed since the last event. The time is
+ * only checked when the other throttling conditions are met, so combine with {@link
+ * #setMinDelta(long)} to avoid reading the clock on every update.
+ * @param minInterval minimum time between events, 0 to disable
+ * @param unit unit of minInterval
+ */
+public void setMinInterval(long minInterval, TimeUnit unit) {
+	mMinIntervalNanos = unit.toNanos(minInterval);
+}
+
+/**
+ * Only send an event when the progress has increased this many percent since the last event. Has
+ * no effect if the total is unknown.
+ * @param percentageStep minimum percentage between events, 0 to disable
+ */
+public void setPercentageStep(float percentageStep) {
+	mPercentageStep = percentageStep;
+	updateNextEvent(Math.max(mcLastEvent, 0));
+}
+
+/**
+ * Send an event if the time throttling allows it
+ */
+private void sendEvent() {
+	boolean complete = mcComplete == mcTotal;
+	if (!complete && mMinIntervalNanos > 0 && mcLastEvent != -1) {
+		if (System.nanoTime() - mLastEventTime < mMinIntervalNanos) {
+			updateNextEvent(mcComplete);
+			return;
+		}
+	}
+
+	postEvent();
+}
+
+/**
+ * Send the update and calculate when the next one should be sent
+ */
+private void postEvent() {
+	mListener.onProgress(mcComplete, mcTotal);
+	mcLastEvent = mcComplete;
+	if (mMinIntervalNanos > 0) {
+		mLastEventTime = System.nanoTime();
+	}
+	updateNextEvent(mcComplete);
+}
+
+/**
+ * Calculate when the next event should be sent. Never later than the total so that the last event
+ * is always sent.
+ * @param from calculate from this many completed parts
+ */
+private void updateNextEvent(long from) {
+	mcNextEvent = from + getStep();
+	if (mcTotal > 0 && mcNextEvent > mcTotal && from < mcTotal) {
+		mcNextEvent = mcTotal;
+	}
+}
+
+/**
+ * @return minimum number of parts between events
+ */
+private long getStep() {
+	long step = Math.max(mMinDelta, 1);
+	if (mcTotal > 0 && mPercentageStep > 0) {
+		step = Math.max(step, (long) (mcTotal * (mPercentageStep / 100.0)));
+	}
+	return step;
+}
+}
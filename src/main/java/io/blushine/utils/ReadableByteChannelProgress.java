@@ -0,0 +1,146 @@
+package io.blushine.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wrapper for a readable channel with progress. By default an event is sent for every read, use
+ * {@link #setMinBytesDelta(long)}, {@link #setMinInterval(long, TimeUnit)} and {@link
+ * #setPercentageStep(float)} to throttle the events. The event for the last byte (or for reaching
+ * the end of the channel if the total is unknown) is always sent.
+ * <p>
+ * Wrapping a {@link FileChannel} hides it from code that checks for file channels. Use {@link
+ * #transferTo(WritableByteChannel, long, ProgressListener)} or {@link Buffers#transfer(
+ *ReadableByteChannel, WritableByteChannel, long, ProgressListener)} (which unwraps this channel)
+ * to still transfer the bytes with {@link FileChannel#transferTo}; the progress is then counted from
+ * the bytes each call returns.
+ * @see ProgressReporter
+ */
+public class ReadableByteChannelProgress implements ReadableByteChannel {
+/** Original channel */
+private final ReadableByteChannel mChannel;
+/** Counts read bytes and sends the events */
+private final ProgressReporter mProgress;
+
+/**
+ * @param channel original channel to wrap
+ */
+public ReadableByteChannelProgress(ReadableByteChannel channel) {
+	this(channel, -1);
+}
+
+/**
+ * @param channel original channel to wrap
+ * @param cTotalBytes total byte count, -1 if not known
+ */
+public ReadableByteChannelProgress(ReadableByteChannel channel, long cTotalBytes) {
+	this(channel, cTotalBytes, new EventBusProgressListener());
+}
+
+/**
+ * @param channel original channel to wrap
+ * @param cTotalBytes total byte count, -1 if not known
+ * @param listener gets the number of read bytes instead of the {@link EventBus}
+ */
+public ReadableByteChannelProgress(ReadableByteChannel channel, long cTotalBytes, ProgressListener listener) {
+	mChannel = channel;
+	mProgress = new ProgressReporter(cTotalBytes, listener);
+}
+
+/**
+ * Only send an event when at least this many bytes have been read since the last event
+ * @param minBytesDelta minimum number of bytes between events, 0 to disable
+ */
+public void setMinBytesDelta(long minBytesDelta) {
+	mProgress.setMinDelta(minBytesDelta);
+}
+
+/**
+ * Only send an event when at least this much time has passed since the last event
+ * @param minInterval minimum time between events, 0 to disable
+ * @param unit unit of minInterval
+ * @see ProgressReporter#setMinInterval(long, TimeUnit)
+ */
+public void setMinInterval(long minInterval, TimeUnit unit) {
+	mProgress.setMinInterval(minInterval, unit);
+}
+
+/**
+ * Only send an event when the progress has increased this many percent since the last event. Has
+ * no effect if the total is unknown.
+ * @param percentageStep minimum percentage between events, 0 to disable
+ */
+public void setPercentageStep(float percentageStep) {
+	mProgress.setPercentageStep(percentageStep);
+}
+
+@Override
+public int read(ByteBuffer dst) throws IOException {
+	int cRead = mChannel.read(dst);
+	if (cRead > 0) {
+		mProgress.add(cRead);
+	} else if (cRead == -1) {
+		mProgress.finish();
+	}
+	return cRead;
+}
+
+/**
+ * Transfer bytes from the original channel to another channel, see {@link
+ * Buffers#transfer(ReadableByteChannel, WritableByteChannel, long, ProgressListener)}. File
+ * channels are transferred without copying the bytes through the JVM.
+ * @param target the channel to write to
+ * @param maxBytes maximum number of bytes to transfer, -1 for no limit
+ * @param listener called after every transferred chunk, can be null
+ * @return number of bytes transferred
+ * @throws IOException if reading or writing failed
+ */
+public long transferTo(WritableByteChannel target, long maxBytes, ProgressListener listener) throws IOException {
+	return Buffers.transfer(mChannel, target, maxBytes, new CountingListener(mProgress, listener));
+}
+
+@Override
+public boolean isOpen() {
+	return mChannel.isOpen();
+}
+
+/**
+ * Closes the original channel and sends the final event if it hasn't been sent already
+ */
+@Override
+public void close() throws IOException {
+	mChannel.close();
+	mProgress.finish();
+}
+
+/**
+ * Adds the bytes of each transferred chunk to the progress and forwards the call
+ */
+static class CountingListener implements ProgressListener {
+	private final ProgressReporter mProgress;
+	private final ProgressListener mListener;
+	private long mcCounted = 0;
+
+	/**
+	 * @param progress adds the transferred bytes to this progress
+	 * @param listener listener to forward the calls to, can be null
+	 */
+	CountingListener(ProgressReporter progress, ProgressListener listener) {
+		mProgress = progress;
+		mListener = listener;
+	}
+
+	@Override
+	public void onProgress(long complete, long total) {
+		mProgress.add(complete - mcCounted);
+		mcCounted = complete;
+		if (mListener != null) {
+			mListener.onProgress(complete, total);
+		}
+	}
+}
+}
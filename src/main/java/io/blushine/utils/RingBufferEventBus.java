@@ -0,0 +1,407 @@
+package io.blushine.utils;
+
+import com.squareup.otto.DeadEvent;
+import com.squareup.otto.ThreadEnforcer;
+import io.blushine.utils.concurrent.Sequence;
+import io.blushine.utils.concurrent.WaitStrategy;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+
+/**
+ * Event bus backed by a preallocated ring buffer of event slots, in the style of the LMAX
+ * Disruptor. Producers on any thread claim a slot through a sequence counter, fill it and publish
+ * it; no locks or queue nodes are involved. A fixed number of consumer threads follow the producers
+ * and deliver the events. The subscribers are split between the consumer threads, so each
+ * subscriber receives its events in the order they were published and never concurrently. When the
+ * buffer is full the producers wait for the slowest consumer.
+ * <p>
+ * It has the same {@link #register(Object)} and {@link #post(Object)} surface as {@link EventBus}.
+ * For the lowest overhead create the bus with an event factory, claim a slot with {@link #next()},
+ * fill the preallocated event from {@link #getEvent(long)} and {@link #publish(long)} it; the event
+ * is then reused when the ring wraps around, so subscribers must not keep it. Coalescing isn't
+ * supported, {@link SubscribeBatch} methods get single-element lists. Exceptions thrown by
+ * subscribers are sent to the {@link ErrorListener}.
+ * <p>
+ * A consumer can't wait for a free slot, it would wait for itself. Events posted from subscribers
+ * (i.e. on a consumer thread) therefore don't claim a slot; they are added to an unbounded queue
+ * of every consumer and delivered after the current events, still in the order they were posted.
+ * {@link #next()} throws if called from a subscriber.
+ */
+public class RingBufferEventBus extends EventBus {
+private final Slot[] mSlots;
+private final int mMask;
+private final int mIndexShift;
+/** Round (sequence / size) of each published slot, -1 if never published */
+private final AtomicIntegerArray mPublished;
+/** Highest claimed sequence */
+private final Sequence mCursor = new Sequence(-1);
+/** Cached minimum consumer sequence, so producers rarely have to read all consumer sequences */
+private final Sequence mGatingCache = new Sequence(-1);
+private final Consumer[] mConsumers;
+private final WaitStrategy mWaitStrategy;
+private final boolean mPreallocated;
+private volatile boolean mRunning = true;
+
+/**
+ * Create a bus with one consumer thread where events are posted with {@link #post(Object)}
+ * @param bufferSize number of slots, rounded up to a power of two
+ * @param waitStrategy how consumers wait for events and producers for free slots
+ */
+public RingBufferEventBus(int bufferSize, WaitStrategy waitStrategy) {
+	this(bufferSize, 1, waitStrategy, null);
+}
+
+/**
+ * Create a bus
+ * @param bufferSize number of slots, rounded up to a power of two
+ * @param consumerCount number of consumer threads
+ * @param waitStrategy how consumers wait for events and producers for free slots
+ * @param eventFactory creates the preallocated event of each slot for {@link #next()}, {@link
+ * #getEvent(long)} and {@link #publish(long)}, null if events are only posted with {@link
+ * #post(Object)}
+ */
+public RingBufferEventBus(int bufferSize, int consumerCount, WaitStrategy waitStrategy, Supplier<?> eventFactory) {
+	super(ThreadEnforcer.ANY);
+	if (bufferSize <= 0 || bufferSize > 1 << 30) {
+		throw new IllegalArgumentException("Invalid bufferSize: " + bufferSize);
+	}
+	if (consumerCount <= 0) {
+		throw new IllegalArgumentException("consumerCount must be positive: " + consumerCount);
+	}
+	if (waitStrategy == null) {
+		throw new IllegalArgumentException("waitStrategy is null");
+	}
+
+	int size = Maths.nextPowerOfTwo(bufferSize);
+	mSlots = new Slot[size];
+	mMask = size - 1;
+	mIndexShift = Integer.numberOfTrailingZeros(size);
+	mPublished = new AtomicIntegerArray(size);
+	mPreallocated = eventFactory != null;
+	for (int i = 0; i < size; ++i) {
+		mSlots[i] = new Slot(mPreallocated ? eventFactory.get() : null);
+		mPublished.set(i, -1);
+	}
+	mWaitStrategy = waitStrategy;
+
+	mConsumers = new Consumer[consumerCount];
+	for (int i = 0; i < consumerCount; ++i) {
+		mConsumers[i] = new Consumer(i);
+	}
+	for (Consumer consumer : mConsumers) {
+		consumer.mThread.start();
+	}
+}
+
+/**
+ * Post an event from any thread. Waits if the buffer is full.
+ * @param event the event to post
+ */
+@Override
+public void post(Object event) {
+	if (event == null) {
+		throw new NullPointerException("Event to post must not be null.");
+	}
+	recordPost(event);
+
+	EventHandler[] handlers = getHandlers(event.getClass());
+	if (handlers.length == 0) {
+		if (!(event instanceof DeadEvent)) {
+			post(new DeadEvent(this, event));
+		}
+		return;
+	}
+
+	if (isConsumerThread()) {
+		postFromConsumer(event, handlers);
+		return;
+	}
+
+	long sequence = next();
+	Slot slot = mSlots[(int) sequence & mMask];
+	slot.mEvent = event;
+	slot.mHandlers = handlers;
+	publishSlot(sequence);
+}
+
+@Override
+void deliverProduced(Object event, EventHandler handler) {
+	if (isConsumerThread()) {
+		postFromConsumer(event, new EventHandler[] {handler});
+		return;
+	}
+
+	long sequence = next();
+	Slot slot = mSlots[(int) sequence & mMask];
+	slot.mEvent = event;
+	slot.mHandlers = new EventHandler[] {handler};
+	publishSlot(sequence);
+}
+
+/**
+ * @return true if called on one of the consumer threads, i.e. from a subscriber
+ */
+private boolean isConsumerThread() {
+	Thread thread = Thread.currentThread();
+	for (Consumer consumer : mConsumers) {
+		if (consumer.mThread == thread) {
+			return true;
+		}
+	}
+	return false;
+}
+
+/**
+ * Queue an event posted from a subscriber to every consumer without claiming a slot
+ * @param event the event to deliver
+ * @param handlers all handlers of the event
+ */
+private void postFromConsumer(Object event, EventHandler[] handlers) {
+	Pending pending = new Pending(event, handlers);
+	for (Consumer consumer : mConsumers) {
+		consumer.mPending.add(pending);
+	}
+}
+
+/**
+ * Claim the next slot, waits if the buffer is full. The slot must be published with {@link
+ * #publish(long)} afterwards, otherwise the consumers stop at it.
+ * @return sequence of the claimed slot
+ * @throws IllegalStateException if called from a subscriber, it could wait for itself
+ */
+public long next() {
+	if (isConsumerThread()) {
+		throw new IllegalStateException("next() can't be called from a subscriber, use post()");
+	}
+
+	long current;
+	long next;
+	int counter = 0;
+	while (true) {
+		current = mCursor.get();
+		next = current + 1;
+		long wrapPoint = next - mSlots.length;
+		long cachedGating = mGatingCache.get();
+
+		if (wrapPoint > cachedGating || cachedGating > current) {
+			long gating = getMinimumSequence(current);
+			if (wrapPoint > gating) {
+				mWaitStrategy.idle(counter++);
+				continue;
+			}
+			mGatingCache.set(gating);
+		} else if (mCursor.compareAndSet(current, next)) {
+			return next;
+		}
+	}
+}
+
+/**
+ * Get the preallocated event of a claimed slot to fill it
+ * @param sequence sequence from {@link #next()}
+ * @return the preallocated event of the slot
+ * @throws IllegalStateException if the bus has no event factory
+ */
+public Object getEvent(long sequence) {
+	if (!mPreallocated) {
+		throw new IllegalStateException("Bus was created without an event factory");
+	}
+	return mSlots[(int) sequence & mMask].mPreallocatedEvent;
+}
+
+/**
+ * Publish a claimed slot with its preallocated event. Unlike {@link #post(Object)} no {@link
+ * DeadEvent} is posted if nothing handles the event, it would be delivered asynchronously while the
+ * preallocated event may already have been reused.
+ * @param sequence sequence from {@link #next()}
+ * @throws IllegalStateException if the bus has no event factory
+ */
+public void publish(long sequence) {
+	Slot slot = mSlots[(int) sequence & mMask];
+	if (!mPreallocated) {
+		throw new IllegalStateException("Bus was created without an event factory");
+	}
+	slot.mEvent = slot.mPreallocatedEvent;
+	recordPost(slot.mEvent);
+	slot.mHandlers = getHandlers(slot.mEvent.getClass());
+	publishSlot(sequence);
+}
+
+/**
+ * Make a filled slot visible to the consumers
+ * @param sequence sequence of the slot
+ */
+private void publishSlot(long sequence) {
+	if (mConsumers.length > 1) {
+		mSlots[(int) sequence & mMask].mcPending.set(mConsumers.length);
+	}
+	mPublished.lazySet((int) sequence & mMask, (int) (sequence >>> mIndexShift));
+}
+
+/**
+ * @param sequence the sequence to check
+ * @return true if the slot of the sequence has been published
+ */
+private boolean isPublished(long sequence) {
+	return mPublished.get((int) sequence & mMask) == (int) (sequence >>> mIndexShift);
+}
+
+/**
+ * @param minimum value to return if all consumers are ahead of it
+ * @return lowest sequence that all consumers have processed
+ */
+private long getMinimumSequence(long minimum) {
+	for (Consumer consumer : mConsumers) {
+		minimum = Math.min(minimum, consumer.mSequence.get());
+	}
+	return minimum;
+}
+
+/**
+ * @return number of published or claimed events that haven't been processed by all consumers,
+ * events posted from subscribers aren't included
+ */
+public long getBacklog() {
+	long cursor = mCursor.get();
+	return cursor - getMinimumSequence(cursor);
+}
+
+/**
+ * @return same as {@link #getBacklog()}
+ */
+@Override
+public long getQueueDepth() {
+	return getBacklog();
+}
+
+/**
+ * @return number of slots in the buffer
+ */
+public int getBufferSize() {
+	return mSlots.length;
+}
+
+/**
+ * Stop the consumer threads once they have delivered all published events. Posting after this
+ * blocks when the buffer is full.
+ */
+public void shutdown() {
+	mRunning = false;
+}
+
+/**
+ * A slot in the ring buffer
+ */
+private static class Slot {
+	/** Event from the event factory, null if none */
+	private final Object mPreallocatedEvent;
+	/** Event to deliver */
+	private Object mEvent = null;
+	/** Handlers of the event */
+	private EventHandler[] mHandlers = null;
+	/** Consumers that haven't delivered the event yet, only used with several consumers */
+	private final AtomicInteger mcPending = new AtomicInteger();
+
+	private Slot(Object preallocatedEvent) {
+		mPreallocatedEvent = preallocatedEvent;
+	}
+}
+
+/**
+ * An event posted from a subscriber
+ */
+private static class Pending {
+	private final Object mEvent;
+	private final EventHandler[] mHandlers;
+
+	private Pending(Object event, EventHandler[] handlers) {
+		mEvent = event;
+		mHandlers = handlers;
+	}
+}
+
+/**
+ * Delivers the events to its share of the subscribers
+ */
+private class Consumer implements Runnable {
+	private final int mIndex;
+	private final Thread mThread;
+	/** Highest processed sequence */
+	private final Sequence mSequence = new Sequence(-1);
+	/** Events posted from subscribers */
+	private final Queue<Pending> mPending = new ConcurrentLinkedQueue<>();
+
+	private Consumer(int index) {
+		mIndex = index;
+		mThread = new Thread(this, "RingBufferEventBus-" + index);
+		mThread.setDaemon(true);
+	}
+
+	@Override
+	public void run() {
+		long next = mSequence.get() + 1;
+		int counter = 0;
+		while (mRunning || next <= mCursor.get() || !mPending.isEmpty()) {
+			deliverPending();
+			if (!isPublished(next)) {
+				mWaitStrategy.idle(counter++);
+				continue;
+			}
+			counter = 0;
+
+			// Deliver everything that has been published before moving the sequence
+			long last = next;
+			while (last + 1 <= mCursor.get() && isPublished(last + 1)) {
+				last++;
+			}
+			for (long sequence = next; sequence <= last; ++sequence) {
+				Slot slot = mSlots[(int) sequence & mMask];
+				deliver(slot.mEvent, slot.mHandlers);
+
+				// The last consumer releases the event and handlers so they aren't kept until the
+				// ring wraps
+				if (mConsumers.length == 1 || slot.mcPending.decrementAndGet() == 0) {
+					slot.mEvent = null;
+					slot.mHandlers = null;
+				}
+			}
+			mSequence.setOrdered(last);
+			next = last + 1;
+		}
+	}
+
+	/**
+	 * Deliver the events posted from subscribers, including the ones they post in turn
+	 */
+	private void deliverPending() {
+		Pending pending;
+		while ((pending = mPending.poll()) != null) {
+			deliver(pending.mEvent, pending.mHandlers);
+		}
+	}
+
+	/**
+	 * Deliver an event to the handlers of this consumer's subscribers
+	 * @param event the event to deliver
+	 * @param handlers all handlers of the event
+	 */
+	private void deliver(Object event, EventHandler[] handlers) {
+		for (EventHandler handler : handlers) {
+			EventSubscriber subscriber = handler.getSubscriber();
+			if (subscriber.getId() % mConsumers.length != mIndex || !subscriber.isValid()) {
+				continue;
+			}
+			try {
+				invoke(handler, handler.isBatch() ? Arrays.asList(event) : event);
+			} catch (Throwable e) {
+				getErrorListener().onError(e, event, subscriber.getTarget());
+			}
+		}
+	}
+}
+}
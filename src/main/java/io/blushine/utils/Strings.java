@@ -310,6 +310,32 @@ public static String merge(String[] stringArray, String delimiter) {
 	return stringBuilder.toString();
 }
 
+/**
+ * Build an Aho-Corasick automaton that finds all occurrences of the patterns in one linear pass.
+ * Use this instead of looping {@link String#contains(CharSequence)} over many patterns.
+ * @param ignoreCase true if the matching should be case insensitive
+ * @param patterns all patterns to search for
+ * @return automaton for the patterns, can be reused and shared between threads
+ */
+public static AhoCorasick buildMatcher(boolean ignoreCase, String... patterns) {
+	return new AhoCorasick(ignoreCase, patterns);
+}
+
+/**
+ * Build an Aho-Corasick automaton that finds all occurrences of the patterns in one linear pass.
+ * Use this instead of looping {@link String#contains(CharSequence)} over many patterns.
+ * @param ignoreCase true if the matching should be case insensitive
+ * @param patterns all patterns to search for
+ * @return automaton for the patterns, can be reused and shared between threads
+ */
+public static AhoCorasick buildMatcher(boolean ignoreCase, Iterable<String> patterns) {
+	List<String> patternList = new ArrayList<>();
+	for (String pattern : patterns) {
+		patternList.add(pattern);
+	}
+	return new AhoCorasick(ignoreCase, patternList.toArray(new String[patternList.size()]));
+}
+
 
 /**
  * Return true if the string contains HTML markup tags or entities.
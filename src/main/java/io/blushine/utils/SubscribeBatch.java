@@ -0,0 +1,26 @@
+package io.blushine.utils;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method that receives events in batches instead of one at a time. The method must be
+ * public and take one {@link java.util.List} of the events. On an asynchronous {@link EventBus} the
+ * events are collected and delivered together once the interval has passed since the first event of
+ * the batch. On a synchronous bus each event is delivered at once in a list of its own.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SubscribeBatch {
+/**
+ * @return type of events to receive, must be a concrete class
+ */
+Class<?> value();
+
+/**
+ * @return time in milliseconds to collect events before the batch is delivered
+ */
+long interval() default 100;
+}
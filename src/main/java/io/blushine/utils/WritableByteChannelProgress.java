@@ -0,0 +1,115 @@
+package io.blushine.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wrapper for a writable channel with progress. By default an event is sent for every write, use
+ * {@link #setMinBytesDelta(long)}, {@link #setMinInterval(long, TimeUnit)} and {@link
+ * #setPercentageStep(float)} to throttle the events. The event for the last byte (or for closing
+ * the channel if the total is unknown) is always sent.
+ * <p>
+ * Wrapping a {@link FileChannel} hides it from code that checks for file channels. Use {@link
+ * #transferFrom(ReadableByteChannel, long, ProgressListener)} or {@link Buffers#transfer(
+ *ReadableByteChannel, WritableByteChannel, long, ProgressListener)} (which unwraps this channel)
+ * to still transfer the bytes with {@link FileChannel#transferFrom}; the progress is then counted
+ * from the bytes each call returns.
+ * @see ProgressReporter
+ */
+public class WritableByteChannelProgress implements WritableByteChannel {
+/** Original channel */
+private final WritableByteChannel mChannel;
+/** Counts written bytes and sends the events */
+private final ProgressReporter mProgress;
+
+/**
+ * @param channel original channel to wrap
+ */
+public WritableByteChannelProgress(WritableByteChannel channel) {
+	this(channel, -1);
+}
+
+/**
+ * @param channel original channel to wrap
+ * @param cTotalBytes total byte count, -1 if not known
+ */
+public WritableByteChannelProgress(WritableByteChannel channel, long cTotalBytes) {
+	this(channel, cTotalBytes, new EventBusProgressListener());
+}
+
+/**
+ * @param channel original channel to wrap
+ * @param cTotalBytes total byte count, -1 if not known
+ * @param listener gets the number of written bytes instead of the {@link EventBus}
+ */
+public WritableByteChannelProgress(WritableByteChannel channel, long cTotalBytes, ProgressListener listener) {
+	mChannel = channel;
+	mProgress = new ProgressReporter(cTotalBytes, listener);
+}
+
+/**
+ * Only send an event when at least this many bytes have been written since the last event
+ * @param minBytesDelta minimum number of bytes between events, 0 to disable
+ */
+public void setMinBytesDelta(long minBytesDelta) {
+	mProgress.setMinDelta(minBytesDelta);
+}
+
+/**
+ * Only send an event when at least this much time has passed since the last event
+ * @param minInterval minimum time between events, 0 to disable
+ * @param unit unit of minInterval
+ * @see ProgressReporter#setMinInterval(long, TimeUnit)
+ */
+public void setMinInterval(long minInterval, TimeUnit unit) {
+	mProgress.setMinInterval(minInterval, unit);
+}
+
+/**
+ * Only send an event when the progress has increased this many percent since the last event. Has
+ * no effect if the total is unknown.
+ * @param percentageStep minimum percentage between events, 0 to disable
+ */
+public void setPercentageStep(float percentageStep) {
+	mProgress.setPercentageStep(percentageStep);
+}
+
+@Override
+public int write(ByteBuffer src) throws IOException {
+	int cWritten = mChannel.write(src);
+	mProgress.add(cWritten);
+	return cWritten;
+}
+
+/**
+ * Transfer bytes from another channel to the original channel, see {@link
+ * Buffers#transfer(ReadableByteChannel, WritableByteChannel, long, ProgressListener)}. File
+ * channels are transferred without copying the bytes through the JVM.
+ * @param source the channel to read from
+ * @param maxBytes maximum number of bytes to transfer, -1 for no limit
+ * @param listener called after every transferred chunk, can be null
+ * @return number of bytes transferred
+ * @throws IOException if reading or writing failed
+ */
+public long transferFrom(ReadableByteChannel source, long maxBytes, ProgressListener listener) throws IOException {
+	return Buffers.transfer(source, mChannel, maxBytes, new ReadableByteChannelProgress.CountingListener(mProgress, listener));
+}
+
+@Override
+public boolean isOpen() {
+	return mChannel.isOpen();
+}
+
+/**
+ * Closes the original channel and sends the final event if it hasn't been sent already
+ */
+@Override
+public void close() throws IOException {
+	mChannel.close();
+	mProgress.finish();
+}
+}
@@ -0,0 +1,110 @@
+package io.blushine.utils.concurrent;
+
+import io.blushine.utils.Collections;
+import io.blushine.utils.Maths;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free ring buffer for any number of producer and consumer threads. Every slot has its own
+ * sequence number that tells whether it's free to write or ready to read, so producers and consumers
+ * only contend on the padded head/tail sequences through compare-and-set.
+ * @param <ElementType> element type in the buffer
+ */
+public class MpmcRingBuffer<ElementType> implements RingBuffer<ElementType> {
+private final AtomicReferenceArray<ElementType> mBuffer;
+/** Per slot sequence, equals the write sequence when free and write sequence + 1 when ready */
+private final AtomicLongArray mSlotSequences;
+private final int mCapacity;
+/** Next sequence to read */
+private final Sequence mHead = new Sequence();
+/** Next sequence to write */
+private final Sequence mTail = new Sequence();
+
+/**
+ * Create a ring buffer
+ * @param capacity minimum capacity, is rounded up to the next power of two (at least 2)
+ */
+public MpmcRingBuffer(int capacity) {
+	mCapacity = Maths.nextPowerOfTwo(Math.max(capacity, 2));
+	mBuffer = new AtomicReferenceArray<>(mCapacity);
+	mSlotSequences = new AtomicLongArray(mCapacity);
+	for (int i = 0; i < mCapacity; ++i) {
+		mSlotSequences.set(i, i);
+	}
+}
+
+@Override
+public boolean offer(ElementType element) {
+	if (element == null) {
+		throw new IllegalArgumentException("element is null");
+	}
+
+	long tail = mTail.get();
+	while (true) {
+		int index = Collections.wrapIndexPowerOfTwo(mCapacity, tail);
+		long difference = mSlotSequences.get(index) - tail;
+
+		if (difference == 0) {
+			if (mTail.compareAndSet(tail, tail + 1)) {
+				mBuffer.lazySet(index, element);
+				mSlotSequences.lazySet(index, tail + 1);
+				return true;
+			}
+			tail = mTail.get();
+		}
+		// Slot not consumed yet
+		else if (difference < 0) {
+			return false;
+		}
+		// Another producer claimed the slot
+		else {
+			tail = mTail.get();
+		}
+	}
+}
+
+@Override
+public ElementType poll() {
+	long head = mHead.get();
+	while (true) {
+		int index = Collections.wrapIndexPowerOfTwo(mCapacity, head);
+		long difference = mSlotSequences.get(index) - (head + 1);
+
+		if (difference == 0) {
+			if (mHead.compareAndSet(head, head + 1)) {
+				ElementType element = mBuffer.get(index);
+				mBuffer.lazySet(index, null);
+				mSlotSequences.lazySet(index, head + mCapacity);
+				return element;
+			}
+			head = mHead.get();
+		}
+		// Slot not written yet
+		else if (difference < 0) {
+			return null;
+		}
+		// Another consumer took the slot
+		else {
+			head = mHead.get();
+		}
+	}
+}
+
+@Override
+public int size() {
+	long size = mTail.get() - mHead.get();
+	return (int) Math.max(0, Math.min(size, mCapacity));
+}
+
+@Override
+public boolean isEmpty() {
+	return size() == 0;
+}
+
+@Override
+public int getCapacity() {
+	return mCapacity;
+}
+}
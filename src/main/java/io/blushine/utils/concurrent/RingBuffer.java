@@ -0,0 +1,37 @@
+package io.blushine.utils.concurrent;
+
+/**
+ * Bounded lock-free FIFO queue with a power-of-two capacity
+ * @param <ElementType> element type in the buffer
+ * @see SpscRingBuffer
+ * @see MpmcRingBuffer
+ */
+public interface RingBuffer<ElementType> {
+	/**
+	 * Add an element to the end of the buffer
+	 * @param element the element to add, not null
+	 * @return true if added, false if the buffer is full
+	 */
+	boolean offer(ElementType element);
+
+	/**
+	 * Remove the first element in the buffer
+	 * @return first element, null if the buffer is empty
+	 */
+	ElementType poll();
+
+	/**
+	 * @return number of elements in the buffer. Only a snapshot when used concurrently
+	 */
+	int size();
+
+	/**
+	 * @return true if the buffer is empty. Only a snapshot when used concurrently
+	 */
+	boolean isEmpty();
+
+	/**
+	 * @return maximum number of elements in the buffer
+	 */
+	int getCapacity();
+}
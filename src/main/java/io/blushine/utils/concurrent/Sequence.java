@@ -0,0 +1,97 @@
+package io.blushine.utils.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Padding before the sequence value so that it never shares a cache line with another object
+ */
+abstract class SequenceLeftPadding {
+	protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+/**
+ * The actual sequence value
+ */
+abstract class SequenceValue extends SequenceLeftPadding {
+	static final AtomicLongFieldUpdater<SequenceValue> VALUE_UPDATER = AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "mValue");
+	protected volatile long mValue;
+}
+
+/**
+ * Atomic long sequence counter padded against false sharing. Use for counters that are written by
+ * one thread and read by others at a high rate, e.g. the head and tail of a ring buffer.
+ */
+public class Sequence extends SequenceValue {
+protected long p9, p10, p11, p12, p13, p14, p15;
+
+/**
+ * Create a sequence starting at 0
+ */
+public Sequence() {
+	this(0);
+}
+
+/**
+ * Create a sequence
+ * @param initialValue initial value of the sequence
+ */
+public Sequence(long initialValue) {
+	VALUE_UPDATER.lazySet(this, initialValue);
+}
+
+/**
+ * @return current value (volatile read)
+ */
+public long get() {
+	return mValue;
+}
+
+/**
+ * Set the value (volatile write)
+ * @param value the new value
+ */
+public void set(long value) {
+	mValue = value;
+}
+
+/**
+ * Set the value with a store-store barrier only. Cheaper than {@link #set(long)}, use when only
+ * one thread writes the sequence.
+ * @param value the new value
+ */
+public void setOrdered(long value) {
+	VALUE_UPDATER.lazySet(this, value);
+}
+
+/**
+ * Atomically set the value if it equals the expected value
+ * @param expectedValue the expected value
+ * @param newValue the new value
+ * @return true if successful
+ */
+public boolean compareAndSet(long expectedValue, long newValue) {
+	return VALUE_UPDATER.compareAndSet(this, expectedValue, newValue);
+}
+
+/**
+ * Atomically add to the value
+ * @param delta the value to add
+ * @return the updated value
+ */
+public long addAndGet(long delta) {
+	return VALUE_UPDATER.addAndGet(this, delta);
+}
+
+/**
+ * Atomically increment the value
+ * @return the updated value
+ */
+public long incrementAndGet() {
+	return addAndGet(1);
+}
+
+@Override
+public String toString() {
+	return Long.toString(get());
+}
+}
@@ -0,0 +1,126 @@
+package io.blushine.utils.concurrent;
+
+import io.blushine.utils.Collections;
+import io.blushine.utils.Maths;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Padding before the producer's fields
+ */
+abstract class SpscProducerPadding {
+	protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+/**
+ * Fields only written by the producer
+ */
+abstract class SpscProducerFields extends SpscProducerPadding {
+	static final AtomicLongFieldUpdater<SpscProducerFields> TAIL_UPDATER = AtomicLongFieldUpdater.newUpdater(SpscProducerFields.class, "mTail");
+	/** Next sequence to write */
+	protected volatile long mTail;
+	/** Producer's cached value of the head, only used by the producer */
+	protected long mHeadCache;
+}
+
+/**
+ * Padding between the producer's and the consumer's fields
+ */
+abstract class SpscConsumerPadding extends SpscProducerFields {
+	protected long p9, p10, p11, p12, p13, p14, p15;
+}
+
+/**
+ * Fields only written by the consumer
+ */
+abstract class SpscConsumerFields extends SpscConsumerPadding {
+	static final AtomicLongFieldUpdater<SpscConsumerFields> HEAD_UPDATER = AtomicLongFieldUpdater.newUpdater(SpscConsumerFields.class, "mHead");
+	/** Next sequence to read */
+	protected volatile long mHead;
+	/** Consumer's cached value of the tail, only used by the consumer */
+	protected long mTailCache;
+}
+
+/**
+ * Lock-free ring buffer for exactly one producer thread and one consumer thread. The head and tail
+ * are padded against false sharing and each side caches the other side's sequence in a plain
+ * field next to its own, so the other side's cache line is only read when the buffer seems full or
+ * empty.
+ * @param <ElementType> element type in the buffer
+ */
+public class SpscRingBuffer<ElementType> extends SpscConsumerFields implements RingBuffer<ElementType> {
+protected long p17, p18, p19, p20, p21, p22, p23;
+private final Object[] mBuffer;
+private final int mCapacity;
+
+/**
+ * Create a ring buffer
+ * @param capacity minimum capacity, is rounded up to the next power of two
+ */
+public SpscRingBuffer(int capacity) {
+	mCapacity = Maths.nextPowerOfTwo(capacity);
+	mBuffer = new Object[mCapacity];
+}
+
+/**
+ * Add an element to the end of the buffer. Must only be called from the producer thread
+ * @param element the element to add, not null
+ * @return true if added, false if the buffer is full
+ */
+@Override
+public boolean offer(ElementType element) {
+	if (element == null) {
+		throw new IllegalArgumentException("element is null");
+	}
+
+	long tail = mTail;
+	if (tail - mHeadCache >= mCapacity) {
+		mHeadCache = mHead;
+		if (tail - mHeadCache >= mCapacity) {
+			return false;
+		}
+	}
+
+	mBuffer[Collections.wrapIndexPowerOfTwo(mCapacity, tail)] = element;
+	TAIL_UPDATER.lazySet(this, tail + 1);
+	return true;
+}
+
+/**
+ * Remove the first element in the buffer. Must only be called from the consumer thread
+ * @return first element, null if the buffer is empty
+ */
+@Override
+@SuppressWarnings("unchecked")
+public ElementType poll() {
+	long head = mHead;
+	if (head >= mTailCache) {
+		mTailCache = mTail;
+		if (head >= mTailCache) {
+			return null;
+		}
+	}
+
+	int index = Collections.wrapIndexPowerOfTwo(mCapacity, head);
+	ElementType element = (ElementType) mBuffer[index];
+	mBuffer[index] = null;
+	HEAD_UPDATER.lazySet(this, head + 1);
+	return element;
+}
+
+@Override
+public int size() {
+	long size = mTail - mHead;
+	return (int) Math.max(0, Math.min(size, mCapacity));
+}
+
+@Override
+public boolean isEmpty() {
+	return mTail == mHead;
+}
+
+@Override
+public int getCapacity() {
+	return mCapacity;
+}
+}
@@ -0,0 +1,51 @@
+package io.blushine.utils.concurrent;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits for another thread without locks, e.g. a consumer waiting for a producer to
+ * publish. Call {@link #idle(int)} in the waiting loop with the number of times it has been called
+ * during the current wait.
+ */
+public enum WaitStrategy {
+	/** Spin without giving up the CPU. Lowest latency, but keeps a core busy all the time */
+	BUSY_SPIN {
+		@Override
+		public void idle(int counter) {
+			// Keep spinning
+		}
+	},
+	/** Spin for a short while, then yield to other threads. Low latency, keeps a core busy if no other threads want it */
+	YIELD {
+		@Override
+		public void idle(int counter) {
+			if (counter >= SPIN_TRIES) {
+				Thread.yield();
+			}
+		}
+	},
+	/** Spin, yield and then park for short periods. Uses little CPU when idle but adds latency */
+	PARK {
+		@Override
+		public void idle(int counter) {
+			if (counter >= SPIN_TRIES + YIELD_TRIES) {
+				LockSupport.parkNanos(PARK_NANOS);
+			} else if (counter >= SPIN_TRIES) {
+				Thread.yield();
+			}
+		}
+	};
+
+	/** Number of times to spin before yielding */
+	private static final int SPIN_TRIES = 100;
+	/** Number of times to yield before parking */
+	private static final int YIELD_TRIES = 100;
+	/** Time to park each time */
+	private static final long PARK_NANOS = 100_000;
+
+	/**
+	 * Wait a little
+	 * @param counter number of times this has been called during the current wait, starting at 0
+	 */
+	public abstract void idle(int counter);
+}